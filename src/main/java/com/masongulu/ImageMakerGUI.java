@@ -3,7 +3,9 @@ package com.masongulu;
 import com.masongulu.blit.BlitMap;
 import com.masongulu.colors.Palette;
 import com.masongulu.colors.PaletteImage;
+import com.masongulu.colors.RGBImage;
 import com.masongulu.gui.*;
+import com.masongulu.utils.Parallel;
 
 import javax.swing.*;
 import java.awt.*;
@@ -14,9 +16,11 @@ public class ImageMakerGUI {
     private final JFrame frame = new JFrame("BIMG Generator " + VERSION);
     private final JPanel topBarPanel = new JPanel(new GridBagLayout());
     private final JCheckBox useCharacters = new JCheckBox("HD", true);
+    private final JCheckBox directHD = new JCheckBox("Direct HD", false);
     private final StateMachine m = new StateMachine();
 
     public static void main(String[] args) {
+        System.out.println("Using " + Palette.getSearchDescription());
         ImageMakerGUI gui = new ImageMakerGUI();
         gui.startGUI();
 
@@ -43,6 +47,10 @@ public class ImageMakerGUI {
         controller.setLayout(new BoxLayout(controller, BoxLayout.Y_AXIS));
         controller.add(useCharacters);
         useCharacters.addActionListener(actionEvent -> m.usingCharacters.set(useCharacters.isSelected()));
+        // Direct HD picks each cell's colors from the filtered image itself, skipping the dither
+        controller.add(directHD);
+        directHD.addActionListener(actionEvent -> m.directHD.set(directHD.isSelected()));
+        m.usingCharacters.addListener((oldValue, newValue) -> directHD.setEnabled(newValue));
         m.supportsCharacters.addListener((oldValue, newValue) -> {
             if (newValue) {
                 // enable
@@ -53,6 +61,12 @@ public class ImageMakerGUI {
                 useCharacters.setSelected(false);
             }
         });
+        JPanel threadsPanel = new JPanel();
+        threadsPanel.add(new JLabel("Threads"));
+        JSpinner threads = new JSpinner(new SpinnerNumberModel(Parallel.getThreads(), 1, 256, 1));
+        threads.addChangeListener(changeEvent -> Parallel.setThreads((int) threads.getValue()));
+        threadsPanel.add(threads);
+        controller.add(threadsPanel);
         JButton generate = new JButton("Generate");
         generate.addActionListener(actionEvent -> {
             if (fileInput.getImage().isPresent()) {
@@ -60,10 +74,16 @@ public class ImageMakerGUI {
                 BufferedImage[] input = fileInput.getImage().get();
                 BufferedImage[] processed = filterManager.filter(input);
                 Palette[] palettes = paletteManager.getPalettes(processed);
-                PaletteImage[] paletteImages = quantizeManager.getImage(processed, palettes);
-                BlitMap[] blitMaps = new BlitMap[paletteImages.length];
-                for (int i = 0; i < blitMaps.length; i++) {
-                    blitMaps[i] = new BlitMap(paletteImages[i], m.usingCharacters.get());
+                BlitMap[] blitMaps = new BlitMap[processed.length];
+                if (m.usingCharacters.get() && m.directHD.get()) {
+                    for (int i = 0; i < blitMaps.length; i++) {
+                        blitMaps[i] = new BlitMap(new RGBImage(processed[i]), palettes[i]);
+                    }
+                } else {
+                    PaletteImage[] paletteImages = quantizeManager.getImage(processed, palettes);
+                    for (int i = 0; i < blitMaps.length; i++) {
+                        blitMaps[i] = new BlitMap(paletteImages[i], m.usingCharacters.get());
+                    }
                 }
                 previewer.setBlitMap(blitMaps);
                 blitOutput.setBlitMaps(blitMaps);
@@ -3,12 +3,34 @@ package com.masongulu.blit;
 import com.masongulu.colors.Color;
 import com.masongulu.colors.Palette;
 import com.masongulu.colors.PaletteImage;
-
-import java.util.Arrays;
+import com.masongulu.colors.RGBImage;
+import com.masongulu.utils.Parallel;
 
 public class BlitMap {
-    public static boolean textMode = false;
-    private final BlitChar[][] map; // Y, X map
+    // Lines of cells per band when a map is built on the worker pool
+    private static final int BAND_LINES = 8;
+    // Set in patternGlyphs when the cell's colors have to swap for the glyph to come out right
+    private static final int INVERTED = 0x100;
+    // Glyph for each 2x3 pattern of pixels closer to the BG color, bottom right pixel in the top bit
+    private static final int[] patternGlyphs = new int[64];
+
+    static {
+        // For future reference to convert a 2x3 section of pixels to a 2x3 "braille" character
+        // 0x80 + binary count of top left -> bottom right with MS -> LS
+        // If LS bit is set invert upper bits
+        for (int pattern = 0; pattern < patternGlyphs.length; pattern++) {
+            if ((pattern & 0b100000) > 0)
+                patternGlyphs[pattern] = (0x80 + (pattern ^ 0b111111)) | INVERTED;
+            else
+                patternGlyphs[pattern] = 0x80 + pattern;
+        }
+    }
+
+    // One entry per cell indexed by x + line * width, colors hold the FG index in the high nibble and BG in the low
+    private final byte[] glyphs;
+    private final byte[] colors;
+    private final int width;
+    private final int height;
     private final Palette palette;
 
     /**
@@ -18,39 +40,135 @@ public class BlitMap {
     public BlitMap(PaletteImage image, boolean HD) {
         palette = image.getPalette();
         if (HD) {
-            int width = 2 * (image.getWidth() / 2);
-            int height = 3 * (image.getHeight() / 3);
-            map = new BlitChar[height / 3][width / 2];
-
-            for (int y = 0; y < height - 2; y += 3) {
-                for (int x = 0; x < width - 1; x += 2) {
-                    map[y / 3][x / 2] = getHDChar(image, x, y);
+            width = image.getWidth() / 2;
+            height = image.getHeight() / 3;
+            glyphs = new byte[width * height];
+            colors = new byte[width * height];
+            Parallel.forEachBand(height, BAND_LINES, (startLine, endLine) -> {
+                // Scratch space reused by every cell in the band, so encoding doesn't allocate
+                int[] pixels = new int[6];
+                int[] indexFrequency = new int[palette.getLength()];
+                for (int line = startLine; line < endLine; line++) {
+                    for (int x = 0; x < width; x++) {
+                        setHDChar(image, x * 2, line * 3, x + line * width, pixels, indexFrequency);
+                    }
                 }
-            }
+            });
 
         } else {
-            int width = image.getWidth();
-            int height = image.getHeight();
-            map = new BlitChar[height][width];
-            for (int x = 0; x < image.getWidth(); x++) {
-                for (int y = 0; y < image.getHeight(); y++) {
-                    int colIndex = image.getPixelIndex(x, y);
-                    map[y][x] = new BlitChar(' ', colIndex, colIndex);
+            width = image.getWidth();
+            height = image.getHeight();
+            glyphs = new byte[width * height];
+            colors = new byte[width * height];
+            Parallel.forEachBand(height, BAND_LINES, (startLine, endLine) -> {
+                for (int y = startLine; y < endLine; y++) {
+                    for (int x = 0; x < width; x++) {
+                        int colIndex = image.getPixelIndex(x, y);
+                        glyphs[x + y * width] = ' ';
+                        colors[x + y * width] = (byte) (colIndex << 4 | colIndex);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Builds an HD map straight from the colors of an image, without quantizing it first. Each cell gets
+     * whichever pair of palette colors and glyph comes closest to its six source pixels.
+     *
+     * @param image   RGBImage
+     * @param palette Palette
+     */
+    public BlitMap(RGBImage image, Palette palette) {
+        this.palette = palette;
+        width = image.getWidth() / 2;
+        height = image.getHeight() / 3;
+        glyphs = new byte[width * height];
+        colors = new byte[width * height];
+        int colorCount = palette.getLength();
+        // Every unordered pair of palette colors, 120 of them for 16 colors
+        int pairCount = Math.max(1, colorCount * (colorCount - 1) / 2);
+        int[] pairA = new int[pairCount];
+        int[] pairB = new int[pairCount];
+        int pair = 0;
+        for (int a = 0; a < colorCount; a++) {
+            for (int b = a + 1; b < colorCount; b++) {
+                pairA[pair] = a;
+                pairB[pair] = b;
+                pair++;
+            }
+        }
+        int[] paletteRed = new int[colorCount];
+        int[] paletteGreen = new int[colorCount];
+        int[] paletteBlue = new int[colorCount];
+        for (int i = 0; i < colorCount; i++) {
+            paletteRed[i] = palette.getColor(i).getRed();
+            paletteGreen[i] = palette.getColor(i).getGreen();
+            paletteBlue[i] = palette.getColor(i).getBlue();
+        }
+        int[] red = image.getRed();
+        int[] green = image.getGreen();
+        int[] blue = image.getBlue();
+        Parallel.forEachBand(height, BAND_LINES, (startLine, endLine) -> {
+            // Scratch space reused by every cell in the band, distance from each of the six pixels to each color.
+            // Source pixels and palette colors are all 0-255, so the distances fit in an int.
+            int[] distances = new int[6 * colorCount];
+            for (int line = startLine; line < endLine; line++) {
+                for (int x = 0; x < width; x++) {
+                    for (int pixel = 0; pixel < 6; pixel++) {
+                        int i = x * 2 + (pixel & 1) + (line * 3 + pixel / 2) * image.getWidth();
+                        for (int color = 0; color < colorCount; color++) {
+                            distances[pixel * colorCount + color] = (int) Color.distanceSquared(red[i], green[i], blue[i],
+                                    paletteRed[color], paletteGreen[color], paletteBlue[color]);
+                        }
+                    }
+                    setDirectHDChar(x + line * width, distances, colorCount, pairA, pairB);
                 }
             }
+        });
+    }
+
+    private void setDirectHDChar(int cell, int[] distances, int colorCount, int[] pairA, int[] pairB) {
+        int bestError = Integer.MAX_VALUE;
+        int bestPair = 0;
+        for (int pair = 0; pair < pairA.length; pair++) {
+            int a = pairA[pair];
+            int b = pairB[pair];
+            int error = 0;
+            // Each pixel takes whichever color of the pair is closer, stop early once this pair can't win
+            for (int pixel = 0; pixel < 6 && error < bestError; pixel++) {
+                error += Math.min(distances[pixel * colorCount + a], distances[pixel * colorCount + b]);
+            }
+            if (error < bestError) {
+                bestError = error;
+                bestPair = pair;
+            }
+        }
+        int a = pairA[bestPair];
+        int b = pairB[bestPair];
+        // Pixels closer to b set their bit, pixel dx + dy * 2 in bit dx + dy * 2 like the glyphs
+        int pattern = 0;
+        for (int pixel = 0; pixel < 6; pixel++) {
+            if (distances[pixel * colorCount + b] < distances[pixel * colorCount + a])
+                pattern |= 1 << pixel;
         }
+        int glyph = patternGlyphs[pattern];
+        glyphs[cell] = (byte) glyph;
+        if ((glyph & INVERTED) > 0)
+            colors[cell] = (byte) (a << 4 | b);
+        else
+            colors[cell] = (byte) (b << 4 | a);
     }
 
-    private BlitChar getHDChar(PaletteImage image, int x, int y) {
+    private void setHDChar(PaletteImage image, int x, int y, int cell, int[] pixels, int[] indexFrequency) {
         // will return a single character blit array ex {'\146', 'a', '0'}
         //                                                ^ except this is a character
-        int[] indexFrequency = new int[16];
-        Arrays.fill(indexFrequency, 0);
         int BGIndex = 0;
         int FGIndex = 0;
         for (int dx = 0; dx < 2; dx++) {
             for (int dy = 0; dy < 3; dy++) {
                 int index = image.getPixelIndex(x + dx, y + dy);
+                pixels[dx * 3 + dy] = index;
                 indexFrequency[index]++;
                 if (indexFrequency[index] > indexFrequency[BGIndex]) {
                     FGIndex = BGIndex;
@@ -60,122 +178,74 @@ public class BlitMap {
                 }
             }
         }
-        int[] crossPaletteLookup = {FGIndex, BGIndex};
-        Palette reducedPalette = new Palette(new Color[]{palette.getColor(FGIndex), palette.getColor(BGIndex)});
-
-        int charCode = 0;
+        int colorCount = palette.getLength();
+        int[] distances = palette.getDistanceTable();
+        int pattern = 0;
         for (int dy = 2; dy >= 0; dy--) {
             for (int dx = 1; dx >= 0; dx--) {
-                int index = image.getPixelIndex(x + dx, y + dy);
-                int reducedIndex = reducedPalette.getClosestPaletteIndex(new Color(image.getPixelColor(x + dx, y + dy)));
-                image.setPixelIndex(x + dx, y + dy, crossPaletteLookup[reducedIndex]);
-                charCode = charCode << 1;
-                charCode += (reducedIndex == 0) ? 0 : 1;
+                int pixel = pixels[dx * 3 + dy];
+                indexFrequency[pixel] = 0; // clear the counts for the next cell as we go
+                int row = pixel * colorCount;
+                // Pick whichever of the two colors is closer, the FG color wins ties
+                pattern = pattern << 1 | (distances[row + BGIndex] < distances[row + FGIndex] ? 1 : 0);
             }
         }
-        // For future reference to convert a 2x3 section of pixels to a 2x3 "braille" character
-        // 0x80 + binary count of top left -> bottom right with MS -> LS
-        // If LS bit is set invert upper bits
-        if ((charCode & 0b100000) > 0) {
-            // invert colors
-            int tmp = BGIndex;
-            BGIndex = FGIndex;
-            FGIndex = tmp;
-            charCode ^= 0b111111;
-        }
+        int glyph = patternGlyphs[pattern];
+        glyphs[cell] = (byte) glyph;
+        if ((glyph & INVERTED) > 0)
+            colors[cell] = (byte) (FGIndex << 4 | BGIndex);
+        else
+            colors[cell] = (byte) (BGIndex << 4 | FGIndex);
+    }
 
-//        if t[6] == 1 then for i = 1, 5 do t[i] = 1-t[i] end end
-        // t ^ 0b011111
-//        local n = 128
-//        for i = 0, 4 do n = n + t[i+1]*2^i end
-        // n += t & 0b011111
-//        return n, t[6] == 1
-        charCode += 0x80;
-        return new BlitChar((char) charCode, BGIndex, FGIndex);
+    /**
+     * @return The character code of a cell, 0-255
+     */
+    public int getGlyph(int x, int line) {
+        return glyphs[x + line * width] & 0xFF;
+    }
+
+    public int getFGIndex(int x, int line) {
+        return (colors[x + line * width] >> 4) & 0xF;
+    }
+
+    public int getBGIndex(int x, int line) {
+        return colors[x + line * width] & 0xF;
     }
 
     public String getCharacter(int line) {
         StringBuilder str = new StringBuilder();
-        for (BlitChar bc : map[line]) {
-            if (textMode) {
-                str.append("\\");
-                str.append((int) bc.getCharacter());
-            } else {
-                str.append(bc.getCharacter());
-            }
+        for (int x = 0; x < width; x++) {
+            str.append((char) getGlyph(x, line));
         }
         return str.toString();
     }
 
     public String getFG(int line) {
         StringBuilder str = new StringBuilder();
-        for (BlitChar bc : map[line]) {
-            str.append(bc.getFGChar());
+        for (int x = 0; x < width; x++) {
+            str.append(Character.forDigit(getFGIndex(x, line), 16));
         }
         return str.toString();
     }
 
     public String getBG(int line) {
         StringBuilder str = new StringBuilder();
-        for (BlitChar bc : map[line]) {
-            str.append(bc.getBGChar());
+        for (int x = 0; x < width; x++) {
+            str.append(Character.forDigit(getBGIndex(x, line), 16));
         }
         return str.toString();
     }
 
     public int getHeight() {
-        return map.length;
+        return height;
     }
 
     public int getWidth() {
-        return map[0].length;
+        return width;
     }
 
     public Palette getPalette() {
         return palette;
     }
 }
-
-class BlitChar {
-    private char character;
-    private int FG;
-    private int BG;
-
-    public BlitChar(char character, int FG, int BG) {
-        this.character = character;
-        this.FG = FG;
-        this.BG = BG;
-    }
-
-    public char getCharacter() {
-        return character;
-    }
-
-    public void setCharacter(char character) {
-        this.character = character;
-    }
-
-    public int getFG() {
-        return FG;
-    }
-
-    public void setFG(int FG) {
-        this.FG = FG;
-    }
-
-    public char getFGChar() {
-        return Integer.toHexString(FG).charAt(0);
-    }
-
-    public int getBG() {
-        return BG;
-    }
-
-    public void setBG(int BG) {
-        this.BG = BG;
-    }
-
-    public char getBGChar() {
-        return Integer.toHexString(BG).charAt(0);
-    }
-}
@@ -53,7 +53,19 @@ public class Color {
     }
 
     public int getColor() {
-        return conv(getColorArr());
+        return pack(r, g, b);
+    }
+
+    public int getRed() {
+        return r;
+    }
+
+    public int getGreen() {
+        return g;
+    }
+
+    public int getBlue() {
+        return b;
     }
 
     public Color multiply(float scale) {
@@ -77,10 +89,43 @@ public class Color {
     }
 
     public double diff(Color c) {
-        int[] diff = new int[3];
-        diff[0] = r - c.r;
-        diff[1] = g - c.g;
-        diff[2] = b - c.b;
-        return sqrt((diff[0] * diff[0]) + (diff[1] * diff[1]) + (diff[2] * diff[2]));
+        return sqrt(distanceSquared(c));
+    }
+
+    public long distanceSquared(Color c) {
+        return distanceSquared(r, g, b, c.r, c.g, c.b);
+    }
+
+    // Allocation free helpers for working with colors packed into a single 0xRRGGBB int
+
+    public static int pack(int r, int g, int b) {
+        return ((r & 0xFF) << 16) + ((g & 0xFF) << 8) + (b & 0xFF);
+    }
+
+    public static int red(int rgb) {
+        return (rgb & 0xFF0000) >> 16;
+    }
+
+    public static int green(int rgb) {
+        return (rgb & 0x00FF00) >> 8;
+    }
+
+    public static int blue(int rgb) {
+        return rgb & 0x0000FF;
+    }
+
+    /**
+     * Worked out in long, as dithering can push channels far enough out of range for the squares to overflow an int
+     */
+    public static long distanceSquared(int r1, int g1, int b1, int r2, int g2, int b2) {
+        long dr = r1 - r2;
+        long dg = g1 - g2;
+        long db = b1 - b2;
+        return dr * dr + dg * dg + db * db;
+    }
+
+    public static int distanceSquared(int rgb1, int rgb2) {
+        // Packed channels are always 0-255, so this fits in an int
+        return (int) distanceSquared(red(rgb1), green(rgb1), blue(rgb1), red(rgb2), green(rgb2), blue(rgb2));
     }
 }
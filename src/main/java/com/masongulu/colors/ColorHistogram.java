@@ -0,0 +1,123 @@
+package com.masongulu.colors;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Counts how often each color appears, optionally binning colors to fewer bits per channel.
+ * Each entry remembers the average of the colors that fell into it, so binning loses very little detail.
+ */
+public class ColorHistogram {
+    private final int bits;
+    private final int shift;
+    private int[] slots = new int[1 << 12]; // open addressing table of entry index + 1, 0 is empty
+    private int[] entryKey = new int[1 << 11];
+    private long[] entryCount = new long[1 << 11];
+    private long[] entryR = new long[1 << 11];
+    private long[] entryG = new long[1 << 11];
+    private long[] entryB = new long[1 << 11];
+    private int size = 0;
+    private long total = 0;
+
+    /**
+     * @param bits Bits kept per channel, 8 keeps every unique color
+     */
+    public ColorHistogram(int bits) {
+        if (bits < 1 || bits > 8)
+            throw new IllegalArgumentException("Histogram bits must be between 1 and 8, got " + bits);
+        this.bits = bits;
+        this.shift = 8 - bits;
+    }
+
+    public ColorHistogram(BufferedImage image, int bits) {
+        this(bits);
+        add(image);
+    }
+
+    public void add(BufferedImage image) {
+        int width = image.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int rgb : row) {
+                add(rgb, 1);
+            }
+        }
+    }
+
+    public void add(int rgb, long count) {
+        int r = Color.red(rgb);
+        int g = Color.green(rgb);
+        int b = Color.blue(rgb);
+        int key = ((r >> shift) << (2 * bits)) | ((g >> shift) << bits) | (b >> shift);
+        int mask = slots.length - 1;
+        int slot = (key * 0x9E3779B1) >>> (32 - Integer.numberOfTrailingZeros(slots.length));
+        while (slots[slot] != 0 && entryKey[slots[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        int entry = slots[slot] - 1;
+        if (entry < 0) {
+            entry = newEntry(key);
+            slots[slot] = entry + 1;
+            if (size * 2 > slots.length)
+                rehash();
+        }
+        entryCount[entry] += count;
+        entryR[entry] += r * count;
+        entryG[entry] += g * count;
+        entryB[entry] += b * count;
+        total += count;
+    }
+
+    private int newEntry(int key) {
+        if (size == entryKey.length) {
+            int capacity = size * 2;
+            entryKey = Arrays.copyOf(entryKey, capacity);
+            entryCount = Arrays.copyOf(entryCount, capacity);
+            entryR = Arrays.copyOf(entryR, capacity);
+            entryG = Arrays.copyOf(entryG, capacity);
+            entryB = Arrays.copyOf(entryB, capacity);
+        }
+        entryKey[size] = key;
+        return size++;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        int slotBits = Integer.numberOfTrailingZeros(slots.length);
+        for (int entry = 0; entry < size; entry++) {
+            int slot = (entryKey[entry] * 0x9E3779B1) >>> (32 - slotBits);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = entry + 1;
+        }
+    }
+
+    /**
+     * @return Number of distinct entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of colors added in total
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public long getCount(int entry) {
+        return entryCount[entry];
+    }
+
+    /**
+     * @return The average color of an entry packed as 0xRRGGBB
+     */
+    public int getColor(int entry) {
+        long count = entryCount[entry];
+        return Color.pack((int) (entryR[entry] / count), (int) (entryG[entry] / count), (int) (entryB[entry] / count));
+    }
+}
@@ -6,10 +6,49 @@ public class Palette {
             new Color(0x7fcc19), new Color(0xf2b2cc), new Color(0x4c4c4c), new Color(0x999999),
             new Color(0x4c99b2), new Color(0xb266e5), new Color(0x3366cc), new Color(0x7f664c),
             new Color(0x57a64e), new Color(0xcc4c4c), new Color(0x111111)});
+    // The nearest index cube splits RGB space into 32x32x32 cells of 8x8x8 colors each
+    private static final int CUBE_BITS = 5;
+    private static final int CUBE_SHIFT = 8 - CUBE_BITS;
+    private static final int CUBE_CELL = 1 << CUBE_SHIFT;
+    private static final byte CUBE_AMBIGUOUS = -1;
+    // Small throwaway palettes (like the 2 color ones BlitMap makes) never get enough lookups to pay for a cube
+    private static final int CUBE_BUILD_THRESHOLD = 4096;
+    private static final boolean VECTOR_SEARCH = detectVectorSearch();
     private Color[] colors;
+    private volatile byte[] nearestCube;
+    private volatile int[] distanceTable;
+    private int lookups = 0;
+    private VectorPaletteSearch vectorSearch = null;
 
     public Palette(Color[] colors) {
         this.colors = colors;
+        if (VECTOR_SEARCH)
+            vectorSearch = new VectorPaletteSearch(colors);
+    }
+
+    /**
+     * The Vector API is still incubating, so it's only used when the JVM was started with
+     * --add-modules jdk.incubator.vector. Setting -Dbimg.vector=false turns it off.
+     */
+    private static boolean detectVectorSearch() {
+        if (!Boolean.parseBoolean(System.getProperty("bimg.vector", "true")))
+            return false;
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+            return false;
+        try {
+            return VectorPaletteSearch.isUseful();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return A description of how nearest colors are searched for on this JVM
+     */
+    public static String getSearchDescription() {
+        if (VECTOR_SEARCH)
+            return "Vector API palette search (" + VectorPaletteSearch.getLanes() + " lanes)";
+        return "Scalar palette search";
     }
 
     public Color getColor(int index) {
@@ -21,10 +60,29 @@ public class Palette {
     }
 
     public int getClosestPaletteIndex(Color color) {
+        return getClosestPaletteIndex(color.r, color.g, color.b);
+    }
+
+    public int getClosestPaletteIndex(int r, int g, int b) {
+        byte[] cube = getNearestCube();
+        if (cube != null && ((r | g | b) & ~0xFF) == 0) {
+            int index = cube[((r >> CUBE_SHIFT) << (2 * CUBE_BITS)) | ((g >> CUBE_SHIFT) << CUBE_BITS) | (b >> CUBE_SHIFT)];
+            if (index != CUBE_AMBIGUOUS)
+                return index;
+        }
+        return findClosestPaletteIndex(r, g, b);
+    }
+
+    private int findClosestPaletteIndex(int r, int g, int b) {
+        // The vector search works in int lanes, error diffusion can leave colors too far out of range for those
+        if (vectorSearch != null && ((r | g | b) & ~0xFF) == 0)
+            return vectorSearch.closest(r, g, b);
+        // Squared distances in long rank colors the same as their true distances, for any channel values
         int closestIndex = 0;
-        double closestDiff = 0xFFFFFF;
+        long closestDiff = Long.MAX_VALUE;
         for (int index = 0; index < colors.length; index++) {
-            double colorDiff = color.diff(colors[index]);
+            Color c = colors[index];
+            long colorDiff = Color.distanceSquared(r, g, b, c.r, c.g, c.b);
             if (colorDiff < closestDiff) {
                 closestDiff = colorDiff;
                 closestIndex = index;
@@ -33,10 +91,96 @@ public class Palette {
         return closestIndex;
     }
 
+    /**
+     * @return Squared distances between every pair of palette colors, indexed by a * getLength() + b.
+     * Worked out on first use and kept with the palette.
+     */
+    public int[] getDistanceTable() {
+        int[] table = distanceTable;
+        if (table == null) {
+            // Palette colors are 0-255, so the distances fit in an int
+            table = new int[colors.length * colors.length];
+            for (int a = 0; a < colors.length; a++) {
+                for (int b = 0; b < colors.length; b++) {
+                    table[a * colors.length + b] = (int) colors[a].distanceSquared(colors[b]);
+                }
+            }
+            distanceTable = table;
+        }
+        return table;
+    }
+
+    private byte[] getNearestCube() {
+        byte[] cube = nearestCube;
+        if (cube == null && colors.length <= Byte.MAX_VALUE && ++lookups > CUBE_BUILD_THRESHOLD) {
+            cube = buildNearestCube();
+            nearestCube = cube;
+        }
+        return cube;
+    }
+
+    /**
+     * Builds a table of the closest palette index for each cell of a quantized RGB cube.
+     * A cell only gets an index if that color is closest to every color inside the cell,
+     * otherwise it is marked ambiguous and lookups fall back to an exact search.
+     */
+    private byte[] buildNearestCube() {
+        // Duplicate colors can never win a lookup over the earlier copy, so ignore them
+        boolean[] duplicate = new boolean[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            for (int j = 0; j < i && !duplicate[i]; j++) {
+                duplicate[i] = colors[i].equals(colors[j]);
+            }
+        }
+        int cells = 1 << CUBE_BITS;
+        byte[] cube = new byte[cells * cells * cells];
+        int[] minDist = new int[colors.length];
+        int[] maxDist = new int[colors.length];
+        for (int cr = 0; cr < cells; cr++) {
+            for (int cg = 0; cg < cells; cg++) {
+                for (int cb = 0; cb < cells; cb++) {
+                    int best = -1;
+                    for (int index = 0; index < colors.length; index++) {
+                        if (duplicate[index]) continue;
+                        Color c = colors[index];
+                        minDist[index] = boxDistance(c.r, cr, false) + boxDistance(c.g, cg, false)
+                                + boxDistance(c.b, cb, false);
+                        maxDist[index] = boxDistance(c.r, cr, true) + boxDistance(c.g, cg, true)
+                                + boxDistance(c.b, cb, true);
+                        if (best < 0 || maxDist[index] < maxDist[best])
+                            best = index;
+                    }
+                    byte result = (byte) best;
+                    for (int index = 0; index < colors.length; index++) {
+                        if (index != best && !duplicate[index] && minDist[index] <= maxDist[best]) {
+                            result = CUBE_AMBIGUOUS;
+                            break;
+                        }
+                    }
+                    cube[(cr << (2 * CUBE_BITS)) | (cg << CUBE_BITS) | cb] = result;
+                }
+            }
+        }
+        return cube;
+    }
+
+    // Squared distance along one channel from a value to the nearest or farthest edge of a cube cell
+    private static int boxDistance(int value, int cell, boolean farthest) {
+        int low = cell << CUBE_SHIFT;
+        int high = low + CUBE_CELL - 1;
+        int d;
+        if (farthest) {
+            d = Math.max(Math.abs(value - low), Math.abs(value - high));
+        } else {
+            d = value < low ? low - value : (value > high ? value - high : 0);
+        }
+        return d * d;
+    }
+
     public boolean equals(Palette palette) {
         if (this.getLength() == palette.getLength()) {
             for (int colorIndex = 0; colorIndex < this.getLength(); colorIndex++) {
-                if (getColor(colorIndex) != palette.getColor(colorIndex))
+                if (!getColor(colorIndex).equals(palette.getColor(colorIndex)))
                     return false;
             }
             return true;
@@ -0,0 +1,51 @@
+package com.masongulu.colors;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * An image stored as one int array per color channel, indexed by x + y * width.
+ * Channels are plain ints so quantizers can push them outside of 0-255 while diffusing error,
+ * without allocating a Color for every pixel.
+ */
+public class RGBImage {
+    private final int[] red;
+    private final int[] green;
+    private final int[] blue;
+    private final int width;
+    private final int height;
+
+    public RGBImage(BufferedImage image) {
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        int[] pixelArray = new int[width * height];
+        image.getRGB(0, 0, width, height, pixelArray, 0, width);
+        red = new int[pixelArray.length];
+        green = new int[pixelArray.length];
+        blue = new int[pixelArray.length];
+        for (int i = 0; i < pixelArray.length; i++) {
+            red[i] = Color.red(pixelArray[i]);
+            green[i] = Color.green(pixelArray[i]);
+            blue[i] = Color.blue(pixelArray[i]);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] getRed() {
+        return red;
+    }
+
+    public int[] getGreen() {
+        return green;
+    }
+
+    public int[] getBlue() {
+        return blue;
+    }
+}
@@ -0,0 +1,69 @@
+package com.masongulu.colors;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Nearest palette color search using the incubating Vector API, working out the distance to several
+ * palette colors per instruction. Only loaded when the JVM was started with
+ * --add-modules jdk.incubator.vector, Palette falls back to a scalar search otherwise.
+ */
+final class VectorPaletteSearch {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private final int length;
+    private final int[] red;
+    private final int[] green;
+    private final int[] blue;
+
+    VectorPaletteSearch(Color[] colors) {
+        length = colors.length;
+        // Padded out to whole vectors, the padding lanes are masked off in closest
+        int padded = SPECIES.loopBound(length + SPECIES.length() - 1);
+        red = new int[padded];
+        green = new int[padded];
+        blue = new int[padded];
+        for (int i = 0; i < length; i++) {
+            red[i] = colors[i].r;
+            green[i] = colors[i].g;
+            blue[i] = colors[i].b;
+        }
+    }
+
+    /**
+     * @return Whether vectors are wide enough here to beat the scalar search
+     */
+    static boolean isUseful() {
+        return SPECIES.length() >= 4;
+    }
+
+    static int getLanes() {
+        return SPECIES.length();
+    }
+
+    /**
+     * Channels have to be 0-255, so the squared distances fit in the int lanes. Palette searches anything
+     * further out with the scalar search instead.
+     *
+     * @return The index of the closest color, the lowest index wins ties like the scalar search
+     */
+    int closest(int r, int g, int b) {
+        int closestDiff = Integer.MAX_VALUE;
+        int closestIndex = 0;
+        for (int i = 0; i < red.length; i += SPECIES.length()) {
+            IntVector dr = IntVector.fromArray(SPECIES, red, i).sub(r);
+            IntVector dg = IntVector.fromArray(SPECIES, green, i).sub(g);
+            IntVector db = IntVector.fromArray(SPECIES, blue, i).sub(b);
+            VectorMask<Integer> inRange = SPECIES.indexInRange(i, length);
+            IntVector diff = dr.mul(dr).add(dg.mul(dg)).add(db.mul(db));
+            int min = diff.reduceLanes(VectorOperators.MIN, inRange);
+            if (min < closestDiff) {
+                closestDiff = min;
+                closestIndex = i + diff.compare(VectorOperators.EQ, min, inRange).firstTrue();
+            }
+        }
+        // Masked lanes can't win, but never hand back an index past the end of the palette
+        return Math.min(closestIndex, Math.max(0, length - 1));
+    }
+}
@@ -3,7 +3,7 @@ package com.masongulu.formats;
 import com.masongulu.ImageMakerGUI;
 import com.masongulu.blit.BlitMap;
 import com.masongulu.colors.Palette;
-import com.masongulu.utils.Utils;
+import com.masongulu.utils.BufferedChannelWriter;
 
 import java.io.File;
 import java.io.IOException;
@@ -11,50 +11,48 @@ import java.io.IOException;
 import static com.masongulu.colors.Palette.defaultPalette;
 
 public class FormatBBF extends FormatBase {
+    /**
+     * Streams the header and then each frame's character and color byte pairs straight to the file,
+     * so memory use doesn't grow with the number of frames.
+     */
     @Override
     public void save(BlitMap[] blitMaps, File file) {
-        StringBuilder fileDataStringBuilder = new StringBuilder();
-        fileDataStringBuilder.append("BLBFOR1\n").append(blitMaps[0].getWidth()).append("\n")
-                .append(blitMaps[0].getHeight()).append("\n")
-                .append(blitMaps.length).append("\n")
-                .append(System.currentTimeMillis()).append("\n"); // This is supposed to be os.epoch("utc") in lua
-        if (blitMaps[0].getPalette().equals(defaultPalette))
-            fileDataStringBuilder.append("{\"author\": \"BIMG Generator " + ImageMakerGUI.VERSION + "\"}")
-                    .append("\n"); // this is supposed to be a "meta" parameter
-        else {
-            fileDataStringBuilder.append("{\"palette\":["); // Open meta
-            for (BlitMap frame : blitMaps) {
-                fileDataStringBuilder.append("{");
-                Palette palette = frame.getPalette();
-                for (int i = 0; i < 16; i++) {
-                    fileDataStringBuilder.append("\"").append(i).append("\":")
-                            .append(palette.getColor(i));
-                    if (i != 15)
-                        fileDataStringBuilder.append(",");
+        try (BufferedChannelWriter writer = new BufferedChannelWriter(file)) {
+            writer.write("BLBFOR1\n");
+            writer.write(blitMaps[0].getWidth() + "\n");
+            writer.write(blitMaps[0].getHeight() + "\n");
+            writer.write(blitMaps.length + "\n");
+            writer.write(System.currentTimeMillis() + "\n"); // This is supposed to be os.epoch("utc") in lua
+            if (blitMaps[0].getPalette().equals(defaultPalette))
+                writer.write("{\"author\": \"BIMG Generator " + ImageMakerGUI.VERSION + "\"}\n"); // this is supposed to be a "meta" parameter
+            else {
+                writer.write("{\"palette\":["); // Open meta
+                for (BlitMap frame : blitMaps) {
+                    writer.write("{");
+                    Palette palette = frame.getPalette();
+                    for (int i = 0; i < 16; i++) {
+                        writer.write("\"" + i + "\":" + palette.getColor(i));
+                        if (i != 15)
+                            writer.write(",");
+                    }
+                    writer.write("}");
+                    if (frame.getPalette().equals(blitMaps[blitMaps.length - 1].getPalette()))
+                        break; // palette is the same as the last palette, should test for a single palette used for each frame
+                    if (frame != blitMaps[blitMaps.length - 1])
+                        writer.write(",");
                 }
-                fileDataStringBuilder.append("}");
-                if (frame.getPalette().equals(blitMaps[blitMaps.length - 1].getPalette()))
-                    break; // palette is the same as the last palette, should test for a single palette used for each frame
-                if (frame != blitMaps[blitMaps.length - 1])
-                    fileDataStringBuilder.append(",");
+                writer.write("],\"author\": \"BIMG Generator " + ImageMakerGUI.VERSION + "\"}\n");
             }
-            fileDataStringBuilder.append("],").append("\"author\": \"BIMG Generator " + ImageMakerGUI.VERSION + "\"").append("}\n");
-        }
-        for (BlitMap frame : blitMaps) {
-            for (int line = 0; line < frame.getHeight(); line++) {
-                String chars = frame.getCharacter(line);
-                String FGChars = frame.getFG(line);
-                String BGChars = frame.getBG(line);
-                for (int ch = 0; ch < frame.getWidth(); ch++) {
-                    int FG = Character.digit(FGChars.charAt(ch), 16);
-                    int BG = Character.digit(BGChars.charAt(ch), 16);
-                    fileDataStringBuilder.append(chars.charAt(ch));
-                    fileDataStringBuilder.append((char) ((FG << 4) + BG));
+            for (BlitMap frame : blitMaps) {
+                for (int line = 0; line < frame.getHeight(); line++) {
+                    for (int ch = 0; ch < frame.getWidth(); ch++) {
+                        int FG = frame.getFGIndex(ch, line);
+                        int BG = frame.getBGIndex(ch, line);
+                        writer.write(frame.getGlyph(ch, line));
+                        writer.write((FG << 4) + BG);
+                    }
                 }
             }
-        }
-        try {
-            Utils.writeToFile(file, Utils.stringToInt(fileDataStringBuilder.toString()));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -3,69 +3,96 @@ package com.masongulu.formats;
 import com.masongulu.ImageMakerGUI;
 import com.masongulu.blit.BlitMap;
 import com.masongulu.colors.Palette;
-import com.masongulu.utils.LuaTable;
-import com.masongulu.utils.Utils;
+import com.masongulu.utils.BufferedChannelWriter;
+import com.masongulu.utils.LuaWriter;
 
 import java.io.File;
 import java.io.IOException;
 
 public class FormatBIMG extends FormatBase {
     private boolean textMode;
+    private boolean runs;
 
     public FormatBIMG(boolean textMode) {
+        this(textMode, false);
+    }
+
+    /**
+     * @param textMode Escape every glyph past ASCII so the file is plain text
+     * @param runs     Write lines with long runs of one character as ("c"):rep(n) pieces, smaller but slower to load.
+     *                 The file is then only readable by code that loads it with load or textutils.unserialise,
+     *                 readers that parse BIMG as plain data will reject it.
+     */
+    public FormatBIMG(boolean textMode, boolean runs) {
         this.textMode = textMode;
+        this.runs = runs;
     }
 
+    /**
+     * Streams the bimg table to the file frame by frame, frames first and then the named fields.
+     */
     @Override
     public void save(BlitMap[] blitMaps, File filename) {
-        BlitMap.textMode = textMode;
-        LuaTable table = new LuaTable();
-        for (int frameIndex = 0; frameIndex < blitMaps.length; frameIndex++) {
-            BlitMap frame = blitMaps[frameIndex];
-            LuaTable frameTable = new LuaTable();
-            for (int line = 0; line < frame.getHeight(); line++) {
-                LuaTable lineTable = new LuaTable();
-                lineTable.put(frame.getCharacter(line));
-                lineTable.put(frame.getFG(line));
-                lineTable.put(frame.getBG(line));
-                frameTable.put(lineTable);
+        try (BufferedChannelWriter out = new BufferedChannelWriter(filename)) {
+            LuaWriter lua = new LuaWriter(out);
+            lua.setAsciiOnly(textMode);
+            lua.setRuns(runs);
+            lua.beginTable();
+            for (int frameIndex = 0; frameIndex < blitMaps.length; frameIndex++) {
+                BlitMap frame = blitMaps[frameIndex];
+                lua.beginTable();
+                for (int line = 0; line < frame.getHeight(); line++) {
+                    lua.beginTable();
+                    lua.value(frame.getCharacter(line));
+                    lua.value(frame.getFG(line));
+                    lua.value(frame.getBG(line));
+                    lua.endTable();
+                }
+                // insert palette stuff here
+                if (frameIndex > 0 && !frame.getPalette().equals(blitMaps[frameIndex - 1].getPalette())) {
+                    // Not first frame and the palette differs from the last frame
+                    lua.key("palette");
+                    writePalette(lua, frame.getPalette());
+                }
+                lua.endTable();
             }
-            // insert palette stuff here
-            if (frameIndex > 0 && !frame.getPalette().equals(blitMaps[frameIndex - 1].getPalette())) {
-                // Not first frame and the palette differs from the last frame
-                frameTable.put("palette", writePalette(frame.getPalette()));
+            if (!blitMaps[0].getPalette().equals(Palette.defaultPalette)) {
+                // First frame uses a non-default palette
+                lua.key("palette");
+                writePalette(lua, blitMaps[0].getPalette());
             }
-            table.put(frameTable);
-        }
-        BlitMap.textMode = false;
-        if (!blitMaps[0].getPalette().equals(Palette.defaultPalette)) {
-            // First frame uses a non-default palette
-            table.put("palette", writePalette(blitMaps[0].getPalette()));
-        }
-        final String version = "1.0.0";
-        table.put("version", version);
-        table.put("creator", "BIMG Generator " + ImageMakerGUI.VERSION);
-        if (blitMaps.length > 1)
-            table.put("animated", true);
-        try {
-            Utils.writeToFile(filename, Utils.stringToInt(table.toString()));
+            final String version = "1.0.0";
+            lua.key("version");
+            lua.value(version);
+            lua.key("creator");
+            lua.value("BIMG Generator " + ImageMakerGUI.VERSION);
+            if (blitMaps.length > 1) {
+                lua.key("animated");
+                lua.value(true);
+            }
+            lua.endTable();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private LuaTable writePalette(Palette colors) {
-        LuaTable paletteTable = new LuaTable();
+    private void writePalette(LuaWriter lua, Palette colors) throws IOException {
+        lua.beginTable();
         for (int colorIndex = 0; colorIndex < colors.getLength(); colorIndex++) {
-            LuaTable paletteColorTable = new LuaTable();
-            paletteColorTable.put(colors.getColor(colorIndex));
-            paletteTable.put(colorIndex, paletteColorTable);
+            if (colorIndex == 0)
+                lua.key(0); // Lua arrays start at 1, so the first color needs its index written out
+            lua.beginTable();
+            lua.value(colors.getColor(colorIndex).getColor());
+            lua.endTable();
         }
-        return paletteTable;
+        lua.endTable();
     }
 
     @Override
     public String toString() {
+        if (textMode && runs) {
+            return "bimg (text, runs, unserialise only)";
+        }
         if (textMode) {
             return "bimg (text)";
         }
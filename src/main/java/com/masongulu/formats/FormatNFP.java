@@ -1,7 +1,7 @@
 package com.masongulu.formats;
 
 import com.masongulu.blit.BlitMap;
-import com.masongulu.utils.Utils;
+import com.masongulu.utils.BufferedChannelWriter;
 
 import java.io.File;
 import java.io.IOException;
@@ -9,13 +9,12 @@ import java.io.IOException;
 public class FormatNFP extends FormatBase {
     @Override
     public void save(BlitMap[] blitMaps, File file) {
-        StringBuilder fileDataStringBuilder = new StringBuilder();
         BlitMap frame = blitMaps[0];
-        for (int line = 0; line < frame.getHeight(); line++) {
-            fileDataStringBuilder.append(frame.getBG(line)).append("\n");
-        }
-        try {
-            Utils.writeToFile(file, Utils.stringToInt(fileDataStringBuilder.toString()));
+        try (BufferedChannelWriter writer = new BufferedChannelWriter(file)) {
+            for (int line = 0; line < frame.getHeight(); line++) {
+                writer.write(frame.getBG(line));
+                writer.write('\n');
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -14,6 +14,7 @@ import java.io.File;
 public class BlitOutput extends JPanel {
     private final JComboBox<FormatBase> spinner = new JComboBox<>(new FormatBase[]{
             new FormatBIMG(true),
+            new FormatBIMG(true, true),
             new FormatBIMG(false),
             new FormatBBF(),
             new FormatNFP()
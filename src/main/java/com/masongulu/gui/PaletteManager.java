@@ -1,8 +1,10 @@
 package com.masongulu.gui;
 
 import com.masongulu.colors.Color;
+import com.masongulu.colors.ColorHistogram;
 import com.masongulu.colors.Palette;
-import com.masongulu.utils.KMeans;
+import com.masongulu.palettes.*;
+import com.masongulu.utils.SceneDetector;
 import org.json.simple.JSONArray;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
@@ -11,17 +13,29 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.Iterator;
+import java.util.Objects;
 
 public class PaletteManager extends JPanel {
     private final JComboBox<String> spinner = new JComboBox<>(new String[]{
             "Default",
-            "K-Means",
-            "KM (1st frame)",
+            "Adaptive",
+            "Adaptive (1st frame)",
+            "Adaptive (all frames)",
+            "Adaptive (scene cuts)",
             "Custom"
     });
+    private final JComboBox<PaletteGeneratorBase> generatorSelect = new JComboBox<>(new PaletteGeneratorBase[]{
+            new PaletteGeneratorKMeans(),
+            new PaletteGeneratorMedianCut(),
+            new PaletteGeneratorWu(),
+            new PaletteGeneratorOctree()
+    });
     private final TextField customInput = new TextField();
+    private final JSpinner histogramBits = new JSpinner(new SpinnerNumberModel(6, 4, 8, 1));
+    private final JSpinner cutThreshold = new JSpinner(new SpinnerNumberModel(0.3, 0.05, 1.0, 0.05));
     private final StateMachine m;
     private Color[] customPalette;
+    private JPanel lastSelected;
 
     public PaletteManager(StateMachine m) {
         super(new GridBagLayout());
@@ -37,7 +51,8 @@ public class PaletteManager extends JPanel {
             }
         });
         spinner.addActionListener(actionEvent -> {
-            customInput.setEnabled(spinner.getSelectedIndex() == 3);
+            customInput.setEnabled(("Custom").equals(spinner.getSelectedItem()));
+            cutThreshold.setEnabled(("Adaptive (scene cuts)").equals(spinner.getSelectedItem()));
         });
         GridBagConstraints c = new GridBagConstraints();
         this.add(new JLabel("Palette"), c);
@@ -49,6 +64,95 @@ public class PaletteManager extends JPanel {
         customInput.setSize(new Dimension(120, 25));
         customInput.setEnabled(false);
         this.add(customInput, c);
+        c.gridy = 3;
+        JPanel histogramPanel = new JPanel();
+        histogramPanel.add(new JLabel("Color bits"));
+        histogramPanel.add(histogramBits);
+        this.add(histogramPanel, c);
+        c.gridy = 4;
+        JPanel cutPanel = new JPanel();
+        cutPanel.add(new JLabel("Cut threshold"));
+        cutThreshold.setEnabled(false);
+        cutPanel.add(cutThreshold);
+        this.add(cutPanel, c);
+        c.gridy = 5;
+        generatorSelect.setSelectedIndex(0);
+        this.add(generatorSelect, c);
+        c.gridy = 6;
+        lastSelected = getGenerator().getPanel();
+        if (lastSelected != null)
+            this.add(lastSelected, c);
+        generatorSelect.addActionListener(actionEvent -> {
+            if (lastSelected != null)
+                this.remove(lastSelected);
+            lastSelected = getGenerator().getPanel();
+            if (lastSelected != null) {
+                this.add(lastSelected, c);
+            }
+            this.revalidate();
+        });
+    }
+
+    private PaletteGeneratorBase getGenerator() {
+        return (PaletteGeneratorBase) Objects.requireNonNull(generatorSelect.getSelectedItem());
+    }
+
+    private Palette generatePalette(BufferedImage image) {
+        return generatePalette(image, null);
+    }
+
+    /**
+     * @param previous Palette of the previous frame, reused as is when the new palette comes out the same
+     */
+    private Palette generatePalette(BufferedImage image, Palette previous) {
+        ColorHistogram histogram = new ColorHistogram(image, (int) histogramBits.getValue());
+        Color[] previousColors = null;
+        if (previous != null) {
+            previousColors = new Color[previous.getLength()];
+            for (int i = 0; i < previousColors.length; i++) {
+                previousColors[i] = previous.getColor(i);
+            }
+        }
+        Palette palette = new Palette(getGenerator().generate(histogram, 16, previousColors));
+        if (previous != null && palette.equals(previous))
+            return previous;
+        return palette;
+    }
+
+    /**
+     * Builds one palette for a whole animation, each frame is only read into a shared histogram
+     * so the cost of generating the palette doesn't grow with the number of frames.
+     */
+    private Palette generateSharedPalette(BufferedImage[] images) {
+        return generateSharedPalette(images, 0, images.length);
+    }
+
+    private Palette generateSharedPalette(BufferedImage[] images, int start, int end) {
+        ColorHistogram histogram = new ColorHistogram((int) histogramBits.getValue());
+        for (int i = start; i < end; i++) {
+            histogram.add(images[i]);
+        }
+        return new Palette(getGenerator().generate(histogram, 16));
+    }
+
+    /**
+     * Gives each scene of an animation its own palette, only generating a new one at scene cuts.
+     */
+    private void generateScenePalettes(BufferedImage[] images, Palette[] palettes) {
+        boolean[] cuts = SceneDetector.findCuts(images, (double) cutThreshold.getValue());
+        int sceneStart = 0;
+        int scenes = 0;
+        for (int i = 1; i <= images.length; i++) {
+            if (i == images.length || cuts[i]) {
+                Palette palette = generateSharedPalette(images, sceneStart, i);
+                for (int frame = sceneStart; frame < i; frame++) {
+                    palettes[frame] = palette;
+                }
+                sceneStart = i;
+                scenes++;
+            }
+        }
+        System.out.println("Found " + scenes + " scenes in " + images.length + " frames.");
     }
 
     public Palette[] getPalettes(BufferedImage[] images) {
@@ -58,10 +162,15 @@ public class PaletteManager extends JPanel {
         if (("Default").equals(selection)) {
             copyFirst = true;
             palettes[0] = Palette.defaultPalette;
-        } else if (("K-Means").equals(selection)) {
+        } else if (("Adaptive").equals(selection)) {
             for (int i = 0; i < images.length; i++) {
-                palettes[i] = new Palette(KMeans.applyKMeans(images[i], 16));
+                palettes[i] = generatePalette(images[i], i > 0 ? palettes[i - 1] : null);
             }
+        } else if (("Adaptive (all frames)").equals(selection)) {
+            copyFirst = true;
+            palettes[0] = generateSharedPalette(images);
+        } else if (("Adaptive (scene cuts)").equals(selection)) {
+            generateScenePalettes(images, palettes);
         } else if (("Custom").equals(selection)) {
             // load from input box
             copyFirst = true;
@@ -83,7 +192,7 @@ public class PaletteManager extends JPanel {
             }
         } else {
             copyFirst = true;
-            palettes[0] = new Palette(KMeans.applyKMeans(images[0], 16));
+            palettes[0] = generatePalette(images[0]);
         }
         if (copyFirst) {
             for (int i = 1; i < images.length; i++) {
@@ -71,14 +71,11 @@ public class Previewer extends ScrollPane {
                 blitMap.getHeight() * 3, BufferedImage.TYPE_INT_RGB);
         Palette imPalette = blitMap.getPalette();
         for (int line = 0; line < blitMap.getHeight(); line++) {
-            String lineString = blitMap.getCharacter(line);
-            String lineBG = blitMap.getBG(line);
-            String lineFG = blitMap.getFG(line);
-            for (int i = 0; i < lineString.length(); i++) {
+            for (int i = 0; i < blitMap.getWidth(); i++) {
                 // iterate over line of characters
-                int chCode = lineString.charAt(i) - 0x80;
-                Color BG = imPalette.getColor(Character.digit(lineBG.charAt(i), 16));
-                Color FG = imPalette.getColor(Character.digit(lineFG.charAt(i), 16));
+                int chCode = blitMap.getGlyph(i, line) - 0x80;
+                Color BG = imPalette.getColor(blitMap.getBGIndex(i, line));
+                Color FG = imPalette.getColor(blitMap.getFGIndex(i, line));
                 if (chCode < 0 || chCode > 64) {
                     // this character is not a graphics character, so just fill this section with pixels
                     for (int dx = 0; dx < 2; dx++) {
@@ -1,11 +1,15 @@
 package com.masongulu.gui;
 
+import com.masongulu.colors.Color;
 import com.masongulu.colors.Palette;
 import com.masongulu.colors.PaletteImage;
 import com.masongulu.quantizers.QuantizeBlueNoise;
+import com.masongulu.quantizers.QuantizeErrorDiffusion;
 import com.masongulu.quantizers.QuantizeFloydSteinberg;
 import com.masongulu.quantizers.QuantizeNone;
 import com.masongulu.quantizers.QuantizeOrdered;
+import com.masongulu.quantizers.QuantizePattern;
+import com.masongulu.quantizers.QuantizeRiemersma;
 
 import javax.swing.*;
 import java.awt.*;
@@ -17,8 +21,13 @@ public class QuantizeManager extends JPanel {
             new QuantizeNone(),
             new QuantizeOrdered(),
             new QuantizeBlueNoise(),
-            new QuantizeFloydSteinberg()
+            new QuantizePattern(),
+            new QuantizeFloydSteinberg(),
+            new QuantizeErrorDiffusion(),
+            new QuantizeRiemersma()
     });
+    private final JCheckBox temporal = new JCheckBox("Keep unchanged pixels");
+    private final JSpinner changeThreshold = new JSpinner(new SpinnerNumberModel(8, 0, 255, 1));
     private final StateMachine m;
     private JPanel lastSelected;
 
@@ -31,6 +40,20 @@ public class QuantizeManager extends JPanel {
         this.add(new JLabel("Dither"));
         c.gridy = 1;
         this.add(spinner, c);
+        GridBagConstraints temporalConstraints = new GridBagConstraints();
+        temporalConstraints.gridy = 3;
+        this.add(temporal, temporalConstraints);
+        temporalConstraints.gridy = 4;
+        JPanel thresholdPanel = new JPanel();
+        thresholdPanel.add(new JLabel("Change threshold"));
+        changeThreshold.setEnabled(false);
+        thresholdPanel.add(changeThreshold);
+        this.add(thresholdPanel, temporalConstraints);
+        temporal.addActionListener(actionEvent -> changeThreshold.setEnabled(temporal.isSelected()));
+        // Direct HD skips the quantizer, so there are no previous indices to keep.
+        // Listeners run before the property changes, so go by the new value.
+        m.directHD.addListener((oldValue, newValue) -> setTemporalAvailable(!(m.usingCharacters.get() && newValue)));
+        m.usingCharacters.addListener((oldValue, newValue) -> setTemporalAvailable(!(newValue && m.directHD.get())));
         c.gridy = 2;
         spinner.addActionListener(actionEvent -> {
             if (lastSelected != null)
@@ -43,11 +66,143 @@ public class QuantizeManager extends JPanel {
         });
     }
 
+    private void setTemporalAvailable(boolean available) {
+        temporal.setEnabled(available);
+        changeThreshold.setEnabled(available && temporal.isSelected());
+    }
+
     public PaletteImage[] getImage(BufferedImage[] images, Palette[] palettes) {
+        QuantizeNone quantizer = (QuantizeNone) Objects.requireNonNull(spinner.getSelectedItem());
         PaletteImage[] out = new PaletteImage[images.length];
+        if (!temporal.isSelected()) {
+            for (int i = 0; i < out.length; i++) {
+                out[i] = quantizer.quantize(images[i], palettes[i]);
+            }
+            return out;
+        }
+        // Source color each pixel was last dithered from, so slow fades still get picked up eventually
+        int[] reference = null;
+        long changedCells = 0;
+        long totalCells = 0;
         for (int i = 0; i < out.length; i++) {
-            out[i] = ((QuantizeNone) Objects.requireNonNull(spinner.getSelectedItem())).quantize(images[i], palettes[i]);
+            BufferedImage image = images[i];
+            if (reference == null || image.getWidth() != out[i - 1].getWidth()
+                    || image.getHeight() != out[i - 1].getHeight() || !palettes[i].equals(palettes[i - 1])) {
+                out[i] = quantizer.quantize(image, palettes[i]);
+                reference = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+            } else {
+                out[i] = quantizeChanges(quantizer, image, palettes[i], out[i - 1], reference);
+            }
+            if (i > 0) {
+                changedCells += countChangedCells(out[i - 1], out[i]);
+                totalCells += countCells(out[i]);
+            }
         }
+        if (totalCells > 0)
+            System.out.println(changedCells + " of " + totalCells + " cells changed between frames.");
         return out;
     }
+
+    /**
+     * Keeps the previous frame's palette indices wherever the source pixel barely changed, and only
+     * dithers the area around the pixels that did. The area is lined up with the quantizer's pattern,
+     * so re-dithered pixels match what dithering the whole frame would give.
+     */
+    private PaletteImage quantizeChanges(QuantizeNone quantizer, BufferedImage image, Palette palette,
+                                         PaletteImage previous, int[] reference) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int threshold = (int) changeThreshold.getValue();
+        int[] rgb = image.getRGB(0, 0, width, height, null, 0, width);
+        boolean[] changed = new boolean[rgb.length];
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        int[][] indices = new int[width][height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = x + y * width;
+                indices[x][y] = previous.getPixelIndex(x, y);
+                int difference = Math.max(Math.abs(Color.red(rgb[i]) - Color.red(reference[i])),
+                        Math.max(Math.abs(Color.green(rgb[i]) - Color.green(reference[i])),
+                                Math.abs(Color.blue(rgb[i]) - Color.blue(reference[i]))));
+                if (difference > threshold) {
+                    changed[i] = true;
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        if (maxX < 0)
+            return new PaletteImage(indices, palette);
+        int period = quantizer.getPatternPeriod();
+        if (period < 0) {
+            // The quantizer needs the whole frame, this only saves the unchanged pixels from reshuffling
+            minX = 0;
+            minY = 0;
+            maxX = width - 1;
+            maxY = height - 1;
+        } else {
+            minX -= minX % period;
+            minY -= minY % period;
+        }
+        PaletteImage region = quantizer.quantize(
+                image.getSubimage(minX, minY, maxX - minX + 1, maxY - minY + 1), palette);
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                int i = x + y * width;
+                if (changed[i]) {
+                    indices[x][y] = region.getPixelIndex(x - minX, y - minY);
+                    reference[i] = rgb[i];
+                }
+            }
+        }
+        return new PaletteImage(indices, palette);
+    }
+
+    /**
+     * @return How many character cells differ from the previous frame, 2x3 pixels each in HD mode
+     */
+    private int countChangedCells(PaletteImage previous, PaletteImage current) {
+        int cellWidth = getCellWidth();
+        int cellHeight = getCellHeight();
+        int cellsX = (current.getWidth() + cellWidth - 1) / cellWidth;
+        int cellsY = (current.getHeight() + cellHeight - 1) / cellHeight;
+        int changedCells = 0;
+        for (int cellY = 0; cellY < cellsY; cellY++) {
+            for (int cellX = 0; cellX < cellsX; cellX++) {
+                if (cellChanged(previous, current, cellX * cellWidth, cellY * cellHeight, cellWidth, cellHeight))
+                    changedCells++;
+            }
+        }
+        return changedCells;
+    }
+
+    private int countCells(PaletteImage image) {
+        int cellWidth = getCellWidth();
+        int cellHeight = getCellHeight();
+        return ((image.getWidth() + cellWidth - 1) / cellWidth) * ((image.getHeight() + cellHeight - 1) / cellHeight);
+    }
+
+    private int getCellWidth() {
+        return m.usingCharacters.get() ? 2 : 1;
+    }
+
+    private int getCellHeight() {
+        return m.usingCharacters.get() ? 3 : 1;
+    }
+
+    private static boolean cellChanged(PaletteImage previous, PaletteImage current, int startX, int startY,
+                                       int cellWidth, int cellHeight) {
+        for (int x = startX; x < Math.min(startX + cellWidth, current.getWidth()); x++) {
+            for (int y = startY; y < Math.min(startY + cellHeight, current.getHeight()); y++) {
+                if (previous.getPixelIndex(x, y) != current.getPixelIndex(x, y))
+                    return true;
+            }
+        }
+        return false;
+    }
 }
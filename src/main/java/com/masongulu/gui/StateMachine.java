@@ -6,4 +6,5 @@ public class StateMachine {
     public final Property<Boolean> supportsCharacters = new Property<>(true);
     public final Property<Boolean> supportsCustomPalette = new Property<>(true);
     public final Property<Boolean> usingCharacters = new Property<>(true);
+    public final Property<Boolean> directHD = new Property<>(false);
 }
@@ -0,0 +1,54 @@
+package com.masongulu.palettes;
+
+import com.masongulu.colors.Color;
+import com.masongulu.colors.ColorHistogram;
+import com.masongulu.utils.KMeans;
+
+import javax.swing.*;
+
+/**
+ * Builds an adaptive palette from a histogram of the colors in one or more images.
+ */
+public abstract class PaletteGeneratorBase {
+    protected JPanel panel = null;
+
+    public JPanel getPanel() {
+        return panel;
+    }
+
+    /**
+     * @param colors Number of colors wanted, the returned array is always this long
+     */
+    public abstract Color[] generate(ColorHistogram histogram, int colors);
+
+    /**
+     * Generates the palette for the next frame of an animation.
+     *
+     * @param previous The palette used for the previous frame, generators may start from it
+     */
+    public Color[] generate(ColorHistogram histogram, int colors, Color[] previous) {
+        return generate(histogram, colors);
+    }
+
+    public abstract String toString();
+
+    /**
+     * Runs a few K-Means iterations starting from an existing palette, to polish a quick first guess.
+     */
+    protected static Color[] refineWithKMeans(ColorHistogram histogram, Color[] palette) {
+        KMeans kMeans = new KMeans(palette.length);
+        kMeans.setInitialCentroids(palette);
+        kMeans.setTolerance(0.5);
+        return kMeans.apply(histogram);
+    }
+
+    /**
+     * Pads a palette with black when there were fewer distinct colors than requested.
+     */
+    protected static Color[] pad(Color[] palette, int found, int colors) {
+        for (int i = found; i < colors; i++) {
+            palette[i] = new Color(0);
+        }
+        return palette;
+    }
+}
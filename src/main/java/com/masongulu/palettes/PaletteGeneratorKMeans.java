@@ -0,0 +1,67 @@
+package com.masongulu.palettes;
+
+import com.masongulu.colors.Color;
+import com.masongulu.colors.ColorHistogram;
+import com.masongulu.utils.KMeans;
+
+import javax.swing.*;
+import java.awt.*;
+
+public class PaletteGeneratorKMeans extends PaletteGeneratorBase {
+    private final JSpinner tolerance = new JSpinner(new SpinnerNumberModel(0.5, 0.0, 16.0, 0.1));
+    private final JSpinner maxIterations = new JSpinner(new SpinnerNumberModel(1000, 1, 10000, 10));
+    private final JCheckBox warmStart = new JCheckBox("Warm start", true);
+    private final JSpinner seed = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 1));
+
+    public PaletteGeneratorKMeans() {
+        panel = new JPanel(new GridBagLayout());
+        GridBagConstraints c = new GridBagConstraints();
+        c.fill = GridBagConstraints.HORIZONTAL;
+        c.gridx = 0;
+        c.gridy = 0;
+        panel.add(new JLabel("Tolerance"), c);
+        c.gridx = 1;
+        panel.add(tolerance, c);
+        c.gridx = 0;
+        c.gridy = 1;
+        panel.add(new JLabel("Iterations"), c);
+        c.gridx = 1;
+        panel.add(maxIterations, c);
+        c.gridx = 0;
+        c.gridy = 2;
+        panel.add(new JLabel("Seed"), c);
+        c.gridx = 1;
+        seed.setToolTipText("Seed for picking the starting colors, the same seed always gives the same palette");
+        panel.add(seed, c);
+        c.gridx = 0;
+        c.gridy = 3;
+        c.gridwidth = 2;
+        warmStart.setToolTipText("Start each animation frame from the previous frame's palette");
+        panel.add(warmStart, c);
+    }
+
+    @Override
+    public Color[] generate(ColorHistogram histogram, int colors) {
+        return generate(histogram, colors, null);
+    }
+
+    /**
+     * Consecutive frames are usually nearly identical, so starting from the last frame's palette
+     * converges in a few iterations and keeps each color at the same index.
+     */
+    @Override
+    public Color[] generate(ColorHistogram histogram, int colors, Color[] previous) {
+        KMeans kMeans = new KMeans(colors);
+        kMeans.setTolerance((double) tolerance.getValue());
+        kMeans.setMaxIterations((int) maxIterations.getValue());
+        kMeans.setSeed((int) seed.getValue());
+        if (previous != null && previous.length == colors && warmStart.isSelected())
+            kMeans.setInitialCentroids(previous);
+        return kMeans.apply(histogram);
+    }
+
+    @Override
+    public String toString() {
+        return "K-Means";
+    }
+}
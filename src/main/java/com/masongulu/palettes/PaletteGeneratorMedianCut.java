@@ -0,0 +1,125 @@
+package com.masongulu.palettes;
+
+import com.masongulu.colors.Color;
+import com.masongulu.colors.ColorHistogram;
+
+import javax.swing.*;
+import java.util.Arrays;
+
+/**
+ * Heckbert's median cut, repeatedly splits the box of colors with the widest, most populated spread
+ * at the weighted median of its longest channel.
+ */
+public class PaletteGeneratorMedianCut extends PaletteGeneratorBase {
+    private final JCheckBox refine = new JCheckBox("Refine with K-Means");
+
+    public PaletteGeneratorMedianCut() {
+        panel = new JPanel();
+        panel.add(refine);
+    }
+
+    @Override
+    public Color[] generate(ColorHistogram histogram, int colors) {
+        int entries = histogram.size();
+        int[] rgb = new int[entries];
+        long[] count = new long[entries];
+        for (int i = 0; i < entries; i++) {
+            rgb[i] = histogram.getColor(i);
+            count[i] = histogram.getCount(i);
+        }
+        // Boxes are ranges of order, which gets reordered in place as boxes are split
+        int[] order = new int[entries];
+        for (int i = 0; i < entries; i++) {
+            order[i] = i;
+        }
+        long[] sortKeys = new long[entries];
+        int[] boxStart = new int[colors];
+        int[] boxEnd = new int[colors];
+        int boxes = entries > 0 ? 1 : 0;
+        boxStart[0] = 0;
+        boxEnd[0] = entries;
+        while (boxes < colors) {
+            // Find the box most worth splitting
+            int bestBox = -1;
+            int bestChannel = 0;
+            double bestScore = 0;
+            for (int box = 0; box < boxes; box++) {
+                if (boxEnd[box] - boxStart[box] < 2) continue;
+                int[] min = {255, 255, 255};
+                int[] max = {0, 0, 0};
+                long boxCount = 0;
+                for (int i = boxStart[box]; i < boxEnd[box]; i++) {
+                    int color = rgb[order[i]];
+                    for (int channel = 0; channel < 3; channel++) {
+                        int value = channel(color, channel);
+                        min[channel] = Math.min(min[channel], value);
+                        max[channel] = Math.max(max[channel], value);
+                    }
+                    boxCount += count[order[i]];
+                }
+                int channel = 0;
+                for (int ch = 1; ch < 3; ch++) {
+                    if (max[ch] - min[ch] > max[channel] - min[channel]) channel = ch;
+                }
+                double score = (double) (max[channel] - min[channel]) * boxCount;
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestBox = box;
+                    bestChannel = channel;
+                }
+            }
+            if (bestBox < 0) break; // every box holds a single color
+            int start = boxStart[bestBox];
+            int end = boxEnd[bestBox];
+            // Sort the box along its longest channel, packing the entry index under the channel value
+            long boxCount = 0;
+            for (int i = start; i < end; i++) {
+                sortKeys[i] = ((long) channel(rgb[order[i]], bestChannel) << 32) | order[i];
+                boxCount += count[order[i]];
+            }
+            Arrays.sort(sortKeys, start, end);
+            for (int i = start; i < end; i++) {
+                order[i] = (int) sortKeys[i];
+            }
+            // Split at the weighted median, keeping at least one entry on each side
+            int split = start + 1;
+            long below = count[order[start]];
+            while (split < end - 1 && below * 2 < boxCount) {
+                below += count[order[split]];
+                split++;
+            }
+            boxEnd[bestBox] = split;
+            boxStart[boxes] = split;
+            boxEnd[boxes] = end;
+            boxes++;
+        }
+        Color[] palette = new Color[colors];
+        for (int box = 0; box < boxes; box++) {
+            long boxCount = 0;
+            long r = 0;
+            long g = 0;
+            long b = 0;
+            for (int i = boxStart[box]; i < boxEnd[box]; i++) {
+                int entry = order[i];
+                boxCount += count[entry];
+                r += Color.red(rgb[entry]) * count[entry];
+                g += Color.green(rgb[entry]) * count[entry];
+                b += Color.blue(rgb[entry]) * count[entry];
+            }
+            palette[box] = new Color((int) (r / boxCount), (int) (g / boxCount), (int) (b / boxCount));
+        }
+        pad(palette, boxes, colors);
+        if (refine.isSelected())
+            return refineWithKMeans(histogram, palette);
+        return palette;
+    }
+
+    private static int channel(int rgb, int channel) {
+        return (rgb >> (16 - 8 * channel)) & 0xFF;
+    }
+
+    @Override
+    public String toString() {
+        return "Median Cut";
+    }
+}
@@ -0,0 +1,143 @@
+package com.masongulu.palettes;
+
+import com.masongulu.colors.Color;
+import com.masongulu.colors.ColorHistogram;
+
+import javax.swing.*;
+import java.util.Arrays;
+
+/**
+ * Octree quantizer, every color is inserted into a tree that splits RGB space in half per level,
+ * then the least populated branches are folded into their parents until few enough leaves remain.
+ */
+public class PaletteGeneratorOctree extends PaletteGeneratorBase {
+    private static final int MAX_DEPTH = 6;
+    private final JCheckBox refine = new JCheckBox("Refine with K-Means");
+
+    // Nodes are stored in parallel arrays, node 0 is the root and a child index of 0 means no child
+    private int[] children;
+    private int[] level;
+    private long[] count;
+    private long[] sumR;
+    private long[] sumG;
+    private long[] sumB;
+    private boolean[] leaf;
+    private int nodes;
+
+    public PaletteGeneratorOctree() {
+        panel = new JPanel();
+        panel.add(refine);
+    }
+
+    @Override
+    public Color[] generate(ColorHistogram histogram, int colors) {
+        int capacity = 1024;
+        children = new int[capacity * 8];
+        level = new int[capacity];
+        count = new long[capacity];
+        sumR = new long[capacity];
+        sumG = new long[capacity];
+        sumB = new long[capacity];
+        leaf = new boolean[capacity];
+        nodes = 1;
+        int leaves = 0;
+        for (int entry = 0; entry < histogram.size(); entry++) {
+            if (insert(histogram.getColor(entry), histogram.getCount(entry)))
+                leaves++;
+        }
+        // Fold the deepest branches first, smallest first, as their children are all leaves by then
+        for (int depth = MAX_DEPTH - 1; depth >= 0 && leaves > colors; depth--) {
+            long[] candidates = new long[nodes];
+            int found = 0;
+            for (int node = 0; node < nodes; node++) {
+                if (level[node] == depth && !leaf[node])
+                    candidates[found++] = (count[node] << 24) | node;
+            }
+            Arrays.sort(candidates, 0, found);
+            for (int i = 0; i < found && leaves > colors; i++) {
+                leaves -= fold((int) (candidates[i] & 0xFFFFFF)) - 1;
+            }
+        }
+        Color[] palette = new Color[colors];
+        int used = 0;
+        for (int node = 0; node < nodes && used < colors; node++) {
+            // Leaves that were folded into their parent have had their count cleared
+            if (leaf[node] && count[node] > 0) {
+                palette[used++] = new Color((int) (sumR[node] / count[node]), (int) (sumG[node] / count[node]),
+                        (int) (sumB[node] / count[node]));
+            }
+        }
+        pad(palette, used, colors);
+        if (refine.isSelected())
+            return refineWithKMeans(histogram, palette);
+        return palette;
+    }
+
+    /**
+     * @return true if this color made a new leaf
+     */
+    private boolean insert(int rgb, long colorCount) {
+        int r = Color.red(rgb);
+        int g = Color.green(rgb);
+        int b = Color.blue(rgb);
+        int node = 0;
+        count[0] += colorCount;
+        boolean newLeaf = false;
+        for (int depth = 0; depth < MAX_DEPTH; depth++) {
+            int shift = 7 - depth;
+            int child = (((r >> shift) & 1) << 2) | (((g >> shift) & 1) << 1) | ((b >> shift) & 1);
+            if (children[node * 8 + child] == 0) {
+                int created = newNode(depth + 1);
+                children[node * 8 + child] = created;
+                newLeaf = depth + 1 == MAX_DEPTH;
+            }
+            node = children[node * 8 + child];
+            count[node] += colorCount;
+        }
+        leaf[node] = true;
+        sumR[node] += r * colorCount;
+        sumG[node] += g * colorCount;
+        sumB[node] += b * colorCount;
+        return newLeaf;
+    }
+
+    private int newNode(int depth) {
+        if (nodes == level.length) {
+            int capacity = nodes * 2;
+            children = Arrays.copyOf(children, capacity * 8);
+            level = Arrays.copyOf(level, capacity);
+            count = Arrays.copyOf(count, capacity);
+            sumR = Arrays.copyOf(sumR, capacity);
+            sumG = Arrays.copyOf(sumG, capacity);
+            sumB = Arrays.copyOf(sumB, capacity);
+            leaf = Arrays.copyOf(leaf, capacity);
+        }
+        level[nodes] = depth;
+        return nodes++;
+    }
+
+    /**
+     * Merges all children of a node into it, making it a leaf.
+     *
+     * @return How many leaves were merged
+     */
+    private int fold(int node) {
+        int merged = 0;
+        for (int i = 0; i < 8; i++) {
+            int child = children[node * 8 + i];
+            if (child == 0) continue;
+            sumR[node] += sumR[child];
+            sumG[node] += sumG[child];
+            sumB[node] += sumB[child];
+            count[child] = 0; // folded away, no longer a palette color
+            merged++;
+        }
+        leaf[node] = true;
+        return merged;
+    }
+
+    @Override
+    public String toString() {
+        return "Octree";
+    }
+}
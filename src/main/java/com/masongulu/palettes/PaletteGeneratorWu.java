@@ -0,0 +1,265 @@
+package com.masongulu.palettes;
+
+import com.masongulu.colors.Color;
+import com.masongulu.colors.ColorHistogram;
+
+import javax.swing.*;
+import java.util.Arrays;
+
+/**
+ * Xiaolin Wu's color quantizer, builds cumulative color moments over a 32x32x32 grid so the variance
+ * of any box can be read off in constant time, then greedily splits the box with the most variance
+ * at whichever plane reduces it the most.
+ */
+public class PaletteGeneratorWu extends PaletteGeneratorBase {
+    private static final int SIDE = 33; // 5 bits per channel plus a row of zeros for the cumulative sums
+    private static final int RED = 0;
+    private static final int GREEN = 1;
+    private static final int BLUE = 2;
+    // Box bounds are stored as {r0, r1, g0, g1, b0, b1}, exclusive of the lower and inclusive of the upper
+    private static final int R0 = 0, R1 = 1, G0 = 2, G1 = 3, B0 = 4, B1 = 5;
+    private final JCheckBox refine = new JCheckBox("Refine with K-Means");
+
+    private long[] weight;
+    private long[] momentR;
+    private long[] momentG;
+    private long[] momentB;
+    private double[] moment2;
+
+    public PaletteGeneratorWu() {
+        panel = new JPanel();
+        panel.add(refine);
+    }
+
+    @Override
+    public Color[] generate(ColorHistogram histogram, int colors) {
+        buildMoments(histogram);
+        int[][] boxes = new int[colors][6];
+        double[] variance = new double[colors];
+        boxes[0] = new int[]{0, SIDE - 1, 0, SIDE - 1, 0, SIDE - 1};
+        int found = 1;
+        int next = 0;
+        while (found < colors) {
+            if (cut(boxes[next], boxes[found])) {
+                variance[next] = volumeOf(boxes[next]) > 1 ? variance(boxes[next]) : 0;
+                variance[found] = volumeOf(boxes[found]) > 1 ? variance(boxes[found]) : 0;
+                found++;
+            } else {
+                variance[next] = 0; // this box can't be split, don't try it again
+            }
+            next = 0;
+            for (int box = 1; box < found; box++) {
+                if (variance[box] > variance[next]) next = box;
+            }
+            if (variance[next] <= 0) break;
+        }
+        Color[] palette = new Color[colors];
+        int used = 0;
+        for (int box = 0; box < found; box++) {
+            long w = volume(boxes[box], weight);
+            if (w > 0) {
+                palette[used++] = new Color((int) (volume(boxes[box], momentR) / w),
+                        (int) (volume(boxes[box], momentG) / w), (int) (volume(boxes[box], momentB) / w));
+            }
+        }
+        pad(palette, used, colors);
+        if (refine.isSelected())
+            return refineWithKMeans(histogram, palette);
+        return palette;
+    }
+
+    private static int index(int r, int g, int b) {
+        return (r * SIDE + g) * SIDE + b;
+    }
+
+    private void buildMoments(ColorHistogram histogram) {
+        int size = SIDE * SIDE * SIDE;
+        weight = new long[size];
+        momentR = new long[size];
+        momentG = new long[size];
+        momentB = new long[size];
+        moment2 = new double[size];
+        for (int entry = 0; entry < histogram.size(); entry++) {
+            int rgb = histogram.getColor(entry);
+            long count = histogram.getCount(entry);
+            int r = Color.red(rgb);
+            int g = Color.green(rgb);
+            int b = Color.blue(rgb);
+            int i = index((r >> 3) + 1, (g >> 3) + 1, (b >> 3) + 1);
+            weight[i] += count;
+            momentR[i] += r * count;
+            momentG[i] += g * count;
+            momentB[i] += b * count;
+            moment2[i] += (double) (r * r + g * g + b * b) * count;
+        }
+        // Turn the histogram into cumulative moments, so each cell holds the sum of every cell below it
+        long[] areaW = new long[SIDE];
+        long[] areaR = new long[SIDE];
+        long[] areaG = new long[SIDE];
+        long[] areaB = new long[SIDE];
+        double[] area2 = new double[SIDE];
+        for (int r = 1; r < SIDE; r++) {
+            Arrays.fill(areaW, 0);
+            Arrays.fill(areaR, 0);
+            Arrays.fill(areaG, 0);
+            Arrays.fill(areaB, 0);
+            Arrays.fill(area2, 0);
+            for (int g = 1; g < SIDE; g++) {
+                long lineW = 0;
+                long lineR = 0;
+                long lineG = 0;
+                long lineB = 0;
+                double line2 = 0;
+                for (int b = 1; b < SIDE; b++) {
+                    int i = index(r, g, b);
+                    int below = index(r - 1, g, b);
+                    lineW += weight[i];
+                    lineR += momentR[i];
+                    lineG += momentG[i];
+                    lineB += momentB[i];
+                    line2 += moment2[i];
+                    areaW[b] += lineW;
+                    areaR[b] += lineR;
+                    areaG[b] += lineG;
+                    areaB[b] += lineB;
+                    area2[b] += line2;
+                    weight[i] = weight[below] + areaW[b];
+                    momentR[i] = momentR[below] + areaR[b];
+                    momentG[i] = momentG[below] + areaG[b];
+                    momentB[i] = momentB[below] + areaB[b];
+                    moment2[i] = moment2[below] + area2[b];
+                }
+            }
+        }
+    }
+
+    private static int volumeOf(int[] box) {
+        return (box[R1] - box[R0]) * (box[G1] - box[G0]) * (box[B1] - box[B0]);
+    }
+
+    private static long volume(int[] box, long[] moment) {
+        return moment[index(box[R1], box[G1], box[B1])] - moment[index(box[R1], box[G1], box[B0])]
+                - moment[index(box[R1], box[G0], box[B1])] + moment[index(box[R1], box[G0], box[B0])]
+                - moment[index(box[R0], box[G1], box[B1])] + moment[index(box[R0], box[G1], box[B0])]
+                + moment[index(box[R0], box[G0], box[B1])] - moment[index(box[R0], box[G0], box[B0])];
+    }
+
+    private static double volume(int[] box, double[] moment) {
+        return moment[index(box[R1], box[G1], box[B1])] - moment[index(box[R1], box[G1], box[B0])]
+                - moment[index(box[R1], box[G0], box[B1])] + moment[index(box[R1], box[G0], box[B0])]
+                - moment[index(box[R0], box[G1], box[B1])] + moment[index(box[R0], box[G1], box[B0])]
+                + moment[index(box[R0], box[G0], box[B1])] - moment[index(box[R0], box[G0], box[B0])];
+    }
+
+    // The part of a box's volume that doesn't depend on where it is cut along a direction
+    private static long bottom(int[] box, int direction, long[] moment) {
+        return switch (direction) {
+            case RED -> -moment[index(box[R0], box[G1], box[B1])] + moment[index(box[R0], box[G1], box[B0])]
+                    + moment[index(box[R0], box[G0], box[B1])] - moment[index(box[R0], box[G0], box[B0])];
+            case GREEN -> -moment[index(box[R1], box[G0], box[B1])] + moment[index(box[R1], box[G0], box[B0])]
+                    + moment[index(box[R0], box[G0], box[B1])] - moment[index(box[R0], box[G0], box[B0])];
+            default -> -moment[index(box[R1], box[G1], box[B0])] + moment[index(box[R1], box[G0], box[B0])]
+                    + moment[index(box[R0], box[G1], box[B0])] - moment[index(box[R0], box[G0], box[B0])];
+        };
+    }
+
+    // The rest of the volume of the lower half of a box cut at position
+    private static long top(int[] box, int direction, int position, long[] moment) {
+        return switch (direction) {
+            case RED -> moment[index(position, box[G1], box[B1])] - moment[index(position, box[G1], box[B0])]
+                    - moment[index(position, box[G0], box[B1])] + moment[index(position, box[G0], box[B0])];
+            case GREEN -> moment[index(box[R1], position, box[B1])] - moment[index(box[R1], position, box[B0])]
+                    - moment[index(box[R0], position, box[B1])] + moment[index(box[R0], position, box[B0])];
+            default -> moment[index(box[R1], box[G1], position)] - moment[index(box[R1], box[G0], position)]
+                    - moment[index(box[R0], box[G1], position)] + moment[index(box[R0], box[G0], position)];
+        };
+    }
+
+    private double variance(int[] box) {
+        double dr = volume(box, momentR);
+        double dg = volume(box, momentG);
+        double db = volume(box, momentB);
+        return volume(box, moment2) - (dr * dr + dg * dg + db * db) / volume(box, weight);
+    }
+
+    /**
+     * Finds the cut along a direction that leaves the two halves with the least total variance.
+     *
+     * @return {score, position}, position is -1 if no cut leaves both halves non empty
+     */
+    private double[] maximize(int[] box, int direction, int first, int last,
+                              long wholeR, long wholeG, long wholeB, long wholeW) {
+        long baseR = bottom(box, direction, momentR);
+        long baseG = bottom(box, direction, momentG);
+        long baseB = bottom(box, direction, momentB);
+        long baseW = bottom(box, direction, weight);
+        double max = 0;
+        int cut = -1;
+        for (int i = first; i < last; i++) {
+            double halfR = baseR + top(box, direction, i, momentR);
+            double halfG = baseG + top(box, direction, i, momentG);
+            double halfB = baseB + top(box, direction, i, momentB);
+            double halfW = baseW + top(box, direction, i, weight);
+            if (halfW == 0) continue;
+            double score = (halfR * halfR + halfG * halfG + halfB * halfB) / halfW;
+            halfR = wholeR - halfR;
+            halfG = wholeG - halfG;
+            halfB = wholeB - halfB;
+            halfW = wholeW - halfW;
+            if (halfW == 0) continue;
+            score += (halfR * halfR + halfG * halfG + halfB * halfB) / halfW;
+            if (score > max) {
+                max = score;
+                cut = i;
+            }
+        }
+        return new double[]{max, cut};
+    }
+
+    /**
+     * Splits box into itself and other at the best plane, returns false if it can't be split.
+     */
+    private boolean cut(int[] box, int[] other) {
+        long wholeR = volume(box, momentR);
+        long wholeG = volume(box, momentG);
+        long wholeB = volume(box, momentB);
+        long wholeW = volume(box, weight);
+        double[] maxR = maximize(box, RED, box[R0] + 1, box[R1], wholeR, wholeG, wholeB, wholeW);
+        double[] maxG = maximize(box, GREEN, box[G0] + 1, box[G1], wholeR, wholeG, wholeB, wholeW);
+        double[] maxB = maximize(box, BLUE, box[B0] + 1, box[B1], wholeR, wholeG, wholeB, wholeW);
+        int direction;
+        int position;
+        if (maxR[0] >= maxG[0] && maxR[0] >= maxB[0]) {
+            direction = RED;
+            position = (int) maxR[1];
+        } else if (maxG[0] >= maxR[0] && maxG[0] >= maxB[0]) {
+            direction = GREEN;
+            position = (int) maxG[1];
+        } else {
+            direction = BLUE;
+            position = (int) maxB[1];
+        }
+        if (position < 0) return false;
+        System.arraycopy(box, 0, other, 0, 6);
+        switch (direction) {
+            case RED -> {
+                other[R0] = position;
+                box[R1] = position;
+            }
+            case GREEN -> {
+                other[G0] = position;
+                box[G1] = position;
+            }
+            default -> {
+                other[B0] = position;
+                box[B1] = position;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Wu";
+    }
+}
@@ -0,0 +1,39 @@
+package com.masongulu.quantizers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates Bayer threshold matrices of any power of two size by recursively tiling the 2x2 matrix.
+ */
+public class BayerMatrix {
+    private static final Map<Integer, int[]> matrices = new ConcurrentHashMap<>();
+
+    /**
+     * @param size Width and height of the matrix, a power of two
+     * @return Thresholds 0 to size*size-1 indexed by x * size + y, matching the classic {{0, 2}, {3, 1}} layout
+     */
+    public static int[] get(int size) {
+        if (size < 1 || Integer.bitCount(size) != 1)
+            throw new IllegalArgumentException("Bayer matrix size must be a power of two");
+        return matrices.computeIfAbsent(size, BayerMatrix::generate);
+    }
+
+    private static int[] generate(int size) {
+        int[] matrix = {0};
+        for (int n = 1; n < size; n *= 2) {
+            int[] next = new int[4 * n * n];
+            for (int x = 0; x < n; x++) {
+                for (int y = 0; y < n; y++) {
+                    int value = 4 * matrix[x * n + y];
+                    next[x * 2 * n + y] = value;
+                    next[x * 2 * n + y + n] = value + 2;
+                    next[(x + n) * 2 * n + y] = value + 3;
+                    next[(x + n) * 2 * n + y + n] = value + 1;
+                }
+            }
+            matrix = next;
+        }
+        return matrix;
+    }
+}
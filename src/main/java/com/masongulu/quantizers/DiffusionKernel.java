@@ -0,0 +1,81 @@
+package com.masongulu.quantizers;
+
+/**
+ * Error diffusion kernels, each tap is {dx, dy, weight} relative to the pixel being quantized,
+ * with the weights out of divisor.
+ */
+public enum DiffusionKernel {
+    FLOYD_STEINBERG("Floyd Steinberg", 16, new int[][]{
+            {1, 0, 7},
+            {-1, 1, 3}, {0, 1, 5}, {1, 1, 1}
+    }),
+    ATKINSON("Atkinson", 8, new int[][]{
+            {1, 0, 1}, {2, 0, 1},
+            {-1, 1, 1}, {0, 1, 1}, {1, 1, 1},
+            {0, 2, 1}
+    }),
+    JARVIS_JUDICE_NINKE("Jarvis Judice Ninke", 48, new int[][]{
+            {1, 0, 7}, {2, 0, 5},
+            {-2, 1, 3}, {-1, 1, 5}, {0, 1, 7}, {1, 1, 5}, {2, 1, 3},
+            {-2, 2, 1}, {-1, 2, 3}, {0, 2, 5}, {1, 2, 3}, {2, 2, 1}
+    }),
+    STUCKI("Stucki", 42, new int[][]{
+            {1, 0, 8}, {2, 0, 4},
+            {-2, 1, 2}, {-1, 1, 4}, {0, 1, 8}, {1, 1, 4}, {2, 1, 2},
+            {-2, 2, 1}, {-1, 2, 2}, {0, 2, 4}, {1, 2, 2}, {2, 2, 1}
+    }),
+    SIERRA("Sierra", 32, new int[][]{
+            {1, 0, 5}, {2, 0, 3},
+            {-2, 1, 2}, {-1, 1, 4}, {0, 1, 5}, {1, 1, 4}, {2, 1, 2},
+            {-1, 2, 2}, {0, 2, 3}, {1, 2, 2}
+    }),
+    SIERRA_LITE("Sierra Lite", 4, new int[][]{
+            {1, 0, 2},
+            {-1, 1, 1}, {0, 1, 1}
+    });
+
+    private final String name;
+    private final int divisor;
+    private final int[][] taps;
+
+    DiffusionKernel(String name, int divisor, int[][] taps) {
+        this.name = name;
+        this.divisor = divisor;
+        this.taps = taps;
+    }
+
+    public int getDivisor() {
+        return divisor;
+    }
+
+    public int[][] getTaps() {
+        return taps;
+    }
+
+    /**
+     * @return How many rows below the current one the kernel reaches
+     */
+    public int getDepth() {
+        int depth = 0;
+        for (int[] tap : taps) {
+            depth = Math.max(depth, tap[1]);
+        }
+        return depth;
+    }
+
+    /**
+     * @return How many columns to either side the kernel reaches
+     */
+    public int getReach() {
+        int reach = 0;
+        for (int[] tap : taps) {
+            reach = Math.max(reach, Math.abs(tap[0]));
+        }
+        return reach;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
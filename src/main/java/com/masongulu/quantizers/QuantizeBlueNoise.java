@@ -1,17 +1,16 @@
 package com.masongulu.quantizers;
 
-import com.masongulu.colors.Color;
+import com.masongulu.colors.RGBImage;
+import com.masongulu.utils.BlueNoise;
+import com.masongulu.utils.Parallel;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.util.Objects;
 
 public class QuantizeBlueNoise extends QuantizeNone {
     private final JSpinner colorSpread = new JSpinner(new SpinnerNumberModel(50, 5, 200, 5));
-    private final BufferedImage noise;
+    private final JSpinner maskSize = new JSpinner(new SpinnerNumberModel(64, 8, 128, 8));
+    private volatile OffsetTable offsetTable;
 
     public QuantizeBlueNoise() {
         panel = new JPanel(new GridBagLayout());
@@ -22,31 +21,74 @@ public class QuantizeBlueNoise extends QuantizeNone {
         panel.add(new JLabel("Color spread"), c);
         c.gridx = 1;
         panel.add(colorSpread, c);
-        try {
-            noise = ImageIO.read(Objects.requireNonNull(getClass().getResource("/images/bluenoise.png")));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        c.gridx = 0;
+        c.gridy = 1;
+        panel.add(new JLabel("Mask size"), c);
+        c.gridx = 1;
+        panel.add(maskSize, c);
+    }
+
+    /**
+     * The offset only depends on the position in the mask, so it's worked out once per mask size and spread.
+     */
+    private OffsetTable getOffsetTable(int size, int colorSpread) {
+        OffsetTable table = offsetTable;
+        if (table == null || table.size != size || table.colorSpread != colorSpread) {
+            table = new OffsetTable(size, colorSpread);
+            offsetTable = table;
         }
+        return table;
     }
 
     @Override
-    protected int[][] applyDither(Color[][] RGBImage) {
-        int[][] paletteArr = new int[RGBImage.length][RGBImage[0].length];
-        int width = RGBImage.length;
-        int height = RGBImage[0].length;
-        int colorSpread = (int) this.colorSpread.getValue();
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int colorOffset = (int) (new Color(noise.getRGB(x % noise.getWidth(),
-                        y % noise.getHeight())).diff(new Color(0)) / 445 * colorSpread);
-                int colIndex = palette.getClosestPaletteIndex(
-                        RGBImage[x][y].add(new Color(colorOffset, colorOffset, colorOffset)));
-                paletteArr[x][y] = colIndex;
+    protected int[][] applyDither(RGBImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[][] paletteArr = new int[width][height];
+        int[] red = image.getRed();
+        int[] green = image.getGreen();
+        int[] blue = image.getBlue();
+        OffsetTable table = getOffsetTable((int) maskSize.getValue(), (int) colorSpread.getValue());
+        int size = table.size;
+        int[] offsets = table.offsets;
+        Parallel.forEachBand(height, BAND_HEIGHT, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                int maskRow = (y % size) * size;
+                for (int x = 0; x < width; x++) {
+                    int colorOffset = offsets[maskRow + x % size];
+                    int i = x + y * width;
+                    int colIndex = palette.getClosestPaletteIndex(
+                            red[i] + colorOffset, green[i] + colorOffset, blue[i] + colorOffset);
+                    paletteArr[x][y] = colIndex;
+                }
             }
-        }
+        });
         return paletteArr;
     }
 
+    private static class OffsetTable {
+        final int size;
+        final int colorSpread;
+        final int[] offsets;
+
+        OffsetTable(int size, int colorSpread) {
+            this.size = size;
+            this.colorSpread = colorSpread;
+            int[] mask = BlueNoise.getMask(size);
+            offsets = new int[mask.length];
+            for (int i = 0; i < mask.length; i++) {
+                // Rank as a gray level, scaled the same way the distance from black of a gray noise pixel was
+                double gray = (double) mask[i] * 256 / mask.length;
+                offsets[i] = (int) (Math.sqrt(3 * gray * gray) / 445 * colorSpread);
+            }
+        }
+    }
+
+    @Override
+    public int getPatternPeriod() {
+        return (int) maskSize.getValue();
+    }
+
     @Override
     public String toString() {
         return "Blue Noise";
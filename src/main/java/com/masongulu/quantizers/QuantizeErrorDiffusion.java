@@ -0,0 +1,100 @@
+package com.masongulu.quantizers;
+
+import com.masongulu.colors.Color;
+import com.masongulu.colors.RGBImage;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Error diffusion with a selectable kernel. Instead of writing error back into the whole image,
+ * pending error is kept in a ring buffer holding only as many rows as the kernel reaches down,
+ * in fixed point with FRACTION_BITS bits below the point.
+ */
+public class QuantizeErrorDiffusion extends QuantizeNone {
+    private static final int FRACTION_BITS = 12;
+    private static final int HALF = 1 << (FRACTION_BITS - 1);
+    private final JComboBox<DiffusionKernel> kernelSelect = new JComboBox<>(DiffusionKernel.values());
+    private final JCheckBox serpentine = new JCheckBox("Serpentine");
+
+    public QuantizeErrorDiffusion() {
+        panel = new JPanel(new GridBagLayout());
+        GridBagConstraints c = new GridBagConstraints();
+        c.fill = GridBagConstraints.HORIZONTAL;
+        c.gridx = 0;
+        c.gridy = 0;
+        panel.add(new JLabel("Kernel"), c);
+        c.gridx = 1;
+        kernelSelect.setSelectedItem(DiffusionKernel.ATKINSON);
+        panel.add(kernelSelect, c);
+        c.gridx = 0;
+        c.gridy = 1;
+        c.gridwidth = 2;
+        panel.add(serpentine, c);
+    }
+
+    @Override
+    protected int[][] applyDither(RGBImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[][] paletteArr = new int[width][height];
+        int[] red = image.getRed();
+        int[] green = image.getGreen();
+        int[] blue = image.getBlue();
+        DiffusionKernel kernel = (DiffusionKernel) Objects.requireNonNull(kernelSelect.getSelectedItem());
+        boolean serpentine = this.serpentine.isSelected();
+        int[][] taps = kernel.getTaps();
+        int[] tapWeights = new int[taps.length];
+        for (int tap = 0; tap < taps.length; tap++) {
+            tapWeights[tap] = Math.round((float) taps[tap][2] * (1 << FRACTION_BITS) / kernel.getDivisor());
+        }
+        int rows = kernel.getDepth() + 1;
+        int reach = kernel.getReach();
+        // Each ring buffer row holds r, g, b error per pixel, padded so taps past either edge land harmlessly
+        int[][] error = new int[rows][(width + 2 * reach) * 3];
+        for (int y = 0; y < height; y++) {
+            int[] rowError = error[y % rows];
+            boolean reverse = serpentine && (y & 1) == 1;
+            for (int step = 0; step < width; step++) {
+                int x = reverse ? width - 1 - step : step;
+                int i = x + y * width;
+                int e = (x + reach) * 3;
+                int r = clamp(red[i] + ((rowError[e] + HALF) >> FRACTION_BITS));
+                int g = clamp(green[i] + ((rowError[e + 1] + HALF) >> FRACTION_BITS));
+                int b = clamp(blue[i] + ((rowError[e + 2] + HALF) >> FRACTION_BITS));
+                int newColor = palette.getClosestPaletteIndex(r, g, b);
+                paletteArr[x][y] = newColor;
+                Color paletteColor = palette.getColor(newColor);
+                int errorR = r - paletteColor.getRed();
+                int errorG = g - paletteColor.getGreen();
+                int errorB = b - paletteColor.getBlue();
+                for (int tap = 0; tap < taps.length; tap++) {
+                    int dx = reverse ? -taps[tap][0] : taps[tap][0];
+                    int target = (x + dx + reach) * 3;
+                    int[] targetRow = error[(y + taps[tap][1]) % rows];
+                    targetRow[target] += errorR * tapWeights[tap];
+                    targetRow[target + 1] += errorG * tapWeights[tap];
+                    targetRow[target + 2] += errorB * tapWeights[tap];
+                }
+            }
+            Arrays.fill(rowError, 0); // this row is done, it gets reused for the row kernel depth + 1 below
+        }
+        return paletteArr;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    @Override
+    public int getPatternPeriod() {
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "Error Diffusion";
+    }
+}
@@ -1,32 +1,104 @@
 package com.masongulu.quantizers;
 
 import com.masongulu.colors.Color;
+import com.masongulu.colors.RGBImage;
+import com.masongulu.utils.Parallel;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 public class QuantizeFloydSteinberg extends QuantizeNone {
+    // How many pixels of the row above must be finished before pixel x can be dithered. It gets error from
+    // x - 1 to x + 1 above, and pixel x + 2 above sends error to x + 1 below, which pixel x also writes to
+    private static final int ROW_LAG = 3;
+    // How often a row tells the row below how far it has got
+    private static final int PUBLISH_INTERVAL = 32;
+
     @Override
-    protected int[][] applyDither(Color[][] RGBImage) {
-        int[][] paletteArr = new int[RGBImage.length][RGBImage[0].length];
-        int width = RGBImage.length;
-        int height = RGBImage[0].length;
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int newColor = palette.getClosestPaletteIndex(RGBImage[x][y]);
-                Color quantizationError = RGBImage[x][y].add(palette.getColor(newColor), -1);
-                if (x + 1 < RGBImage.length)
-                    RGBImage[x + 1][y] = RGBImage[x + 1][y].add(quantizationError.multiply(7.0f / 16));
-                if (y + 1 < RGBImage[0].length) {
-                    RGBImage[x][y + 1] = RGBImage[x][y + 1].add(quantizationError.multiply(5.0f / 16));
-                    if (x > 1)
-                        RGBImage[x - 1][y + 1] = RGBImage[x - 1][y + 1].add(quantizationError.multiply(3.0f / 16));
-                    if (x + 1 < RGBImage.length)
-                        RGBImage[x + 1][y + 1] = RGBImage[x + 1][y + 1].add(quantizationError.multiply(1.0f / 16));
+    protected int[][] applyDither(RGBImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[][] paletteArr = new int[width][height];
+        if (Parallel.getThreads() <= 1 || height < 2) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    ditherPixel(image, paletteArr, x, y);
                 }
-                paletteArr[x][y] = newColor;
             }
+        } else {
+            applyDitherWavefront(image, paletteArr);
         }
         return paletteArr;
     }
 
+    /**
+     * Dithers several rows at once, each trailing the row above by a few pixels so every pixel has
+     * received all of its error before it is quantized. The result is identical to going row by row.
+     * Rows are handed out in order to whichever worker is free, so a row only ever waits on a row that
+     * a running worker is already busy with.
+     */
+    private void applyDitherWavefront(RGBImage image, int[][] paletteArr) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        AtomicIntegerArray progress = new AtomicIntegerArray(height); // finished pixels per row
+        AtomicInteger nextRow = new AtomicInteger();
+        Parallel.forEachChunk(Math.min(Parallel.getThreads(), height), worker -> {
+            int y;
+            while ((y = nextRow.getAndIncrement()) < height) {
+                int aboveFinished = y == 0 ? width : progress.get(y - 1);
+                for (int x = 0; x < width; x++) {
+                    int needed = Math.min(x + ROW_LAG, width);
+                    while (aboveFinished < needed) {
+                        Thread.onSpinWait();
+                        aboveFinished = progress.get(y - 1);
+                    }
+                    ditherPixel(image, paletteArr, x, y);
+                    if ((x + 1) % PUBLISH_INTERVAL == 0)
+                        progress.set(y, x + 1);
+                }
+                progress.set(y, width);
+            }
+        });
+    }
+
+    private void ditherPixel(RGBImage image, int[][] paletteArr, int x, int y) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] red = image.getRed();
+        int[] green = image.getGreen();
+        int[] blue = image.getBlue();
+        int i = x + y * width;
+        int newColor = palette.getClosestPaletteIndex(red[i], green[i], blue[i]);
+        Color paletteColor = palette.getColor(newColor);
+        int errorR = red[i] - paletteColor.getRed();
+        int errorG = green[i] - paletteColor.getGreen();
+        int errorB = blue[i] - paletteColor.getBlue();
+        if (x + 1 < width)
+            diffuse(image, i + 1, errorR, errorG, errorB, 7);
+        if (y + 1 < height) {
+            diffuse(image, i + width, errorR, errorG, errorB, 5);
+            if (x > 1)
+                diffuse(image, i + width - 1, errorR, errorG, errorB, 3);
+            if (x + 1 < width)
+                diffuse(image, i + width + 1, errorR, errorG, errorB, 1);
+        }
+        paletteArr[x][y] = newColor;
+    }
+
+    // Integer division truncates toward zero, the same as the old (int) cast of error * weight / 16f.
+    // Error isn't clamped, as before. On colors the palette can't reach, like a solid fill of pure blue,
+    // it keeps building up and channels run far outside 0-255, which Palette's long distance search handles.
+    private static void diffuse(RGBImage image, int i, int errorR, int errorG, int errorB, int weight) {
+        image.getRed()[i] += errorR * weight / 16;
+        image.getGreen()[i] += errorG * weight / 16;
+        image.getBlue()[i] += errorB * weight / 16;
+    }
+
+    @Override
+    public int getPatternPeriod() {
+        return -1;
+    }
+
     @Override
     public String toString() {
         return "Floyd Steinberg";
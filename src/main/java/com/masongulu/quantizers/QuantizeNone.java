@@ -1,13 +1,16 @@
 package com.masongulu.quantizers;
 
-import com.masongulu.colors.Color;
 import com.masongulu.colors.Palette;
 import com.masongulu.colors.PaletteImage;
+import com.masongulu.colors.RGBImage;
+import com.masongulu.utils.Parallel;
 
 import javax.swing.*;
 import java.awt.image.BufferedImage;
 
 public class QuantizeNone {
+    // Rows per band when a quantizer splits an image across the worker pool
+    protected static final int BAND_HEIGHT = 8;
     protected Palette palette;
     protected JPanel panel;
 
@@ -17,33 +20,37 @@ public class QuantizeNone {
 
     public PaletteImage quantize(BufferedImage image, Palette palette) {
         this.palette = palette;
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int[] pixelArray = new int[width * height];
-        Color[][] colorPixelArr = new Color[width][height];
-        int[][] imageArray;
-        image.getRGB(0, 0, width, height, pixelArray, 0, width);
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                colorPixelArr[x][y] = new Color(pixelArray[x + y * width]);
-            }
-        }
-        imageArray = applyDither(colorPixelArr);
+        int[][] imageArray = applyDither(new RGBImage(image));
         return new PaletteImage(imageArray, palette);
     }
 
-    protected int[][] applyDither(Color[][] RGBImage) {
-        int[][] paletteArr = new int[RGBImage.length][RGBImage[0].length];
-        int width = RGBImage.length;
-        int height = RGBImage[0].length;
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                paletteArr[x][y] = palette.getClosestPaletteIndex(RGBImage[x][y]);
+    protected int[][] applyDither(RGBImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[][] paletteArr = new int[width][height];
+        int[] red = image.getRed();
+        int[] green = image.getGreen();
+        int[] blue = image.getBlue();
+        Parallel.forEachBand(height, BAND_HEIGHT, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                for (int x = 0; x < width; x++) {
+                    int i = x + y * width;
+                    paletteArr[x][y] = palette.getClosestPaletteIndex(red[i], green[i], blue[i]);
+                }
             }
-        }
+        });
         return paletteArr;
     }
 
+    /**
+     * Lets animations re-dither only part of a frame and still line up with the rest of it.
+     * @return How many pixels apart the dither pattern repeats, 1 when each pixel only depends on its own color.
+     * -1 when a pixel depends on the rest of the image, like with error diffusion.
+     */
+    public int getPatternPeriod() {
+        return 1;
+    }
+
     @Override
     public String toString() {
         return "None";
@@ -1,45 +1,15 @@
 package com.masongulu.quantizers;
 
-import com.masongulu.colors.Color;
+import com.masongulu.colors.RGBImage;
+import com.masongulu.utils.Parallel;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.HashMap;
-import java.util.Map;
 
 public class QuantizeOrdered extends QuantizeNone {
-    private static final Map<Integer, double[][]> thresholdMap = new HashMap<>();
-
-    static {
-        thresholdMap.put(2, new double[][]{{0, 2}, {3, 1}});
-        thresholdMap.put(4, new double[][]{{0, 8, 2, 10},
-                {12, 4, 14, 6},
-                {3, 11, 1, 9},
-                {15, 7, 13, 5}
-        });
-        thresholdMap.put(8, new double[][]{
-                {0, 32, 8, 40, 2, 34, 10, 42},
-                {48, 16, 56, 24, 50, 18, 58, 26},
-                {12, 44, 4, 36, 14, 46, 6, 38},
-                {60, 28, 52, 20, 62, 30, 54, 22},
-                {3, 35, 11, 43, 1, 33, 9, 41},
-                {51, 19, 59, 27, 49, 17, 57, 25},
-                {15, 47, 7, 39, 13, 45, 5, 37},
-                {63, 31, 55, 23, 61, 29, 53, 21}
-        });
-        for (int i = 1; i < 4; i++) {
-            int thresholdMapSize = (int) Math.pow(2, i);
-            double[][] thresholdMapI = thresholdMap.get(thresholdMapSize);
-            for (int row = 0; row < thresholdMapI.length; row++) {
-                for (int column = 0; column < thresholdMapI[0].length; column++) {
-                    thresholdMapI[row][column] *= 1 / Math.pow(2, thresholdMapSize);
-                }
-            }
-        }
-    }
-
     private final JSpinner colorSpread = new JSpinner(new SpinnerNumberModel(50, 5, 200, 5));
-    private final JComboBox<Integer> thresholdMapSelect = new JComboBox<>(new Integer[]{2, 4, 8});
+    private final JComboBox<Integer> thresholdMapSelect = new JComboBox<>(new Integer[]{2, 4, 8, 16, 32});
+    private volatile OffsetTable offsetTable;
 
     public QuantizeOrdered() {
         panel = new JPanel(new GridBagLayout());
@@ -58,26 +28,70 @@ public class QuantizeOrdered extends QuantizeNone {
         panel.add(thresholdMapSelect, c);
     }
 
+    /**
+     * The offset only depends on the position in the threshold map, so it's worked out once per map size and spread.
+     */
+    private OffsetTable getOffsetTable(int size, int colorSpread) {
+        OffsetTable table = offsetTable;
+        if (table == null || table.size != size || table.colorSpread != colorSpread) {
+            table = new OffsetTable(size, colorSpread);
+            offsetTable = table;
+        }
+        return table;
+    }
+
     @Override
-    protected int[][] applyDither(Color[][] RGBImage) {
-        int[][] paletteArr = new int[RGBImage.length][RGBImage[0].length];
-        int width = RGBImage.length;
-        int height = RGBImage[0].length;
-        double[][] thresholdMap = QuantizeOrdered.thresholdMap.get((Integer) thresholdMapSelect.getSelectedItem());
-        int colorSpread = (int) this.colorSpread.getValue();
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                int colorOffset = (int) (colorSpread *
-                        (thresholdMap[x % thresholdMap.length][y % thresholdMap[0].length] - 1 / 2.0));
-                int paletteIndex = palette.getClosestPaletteIndex(
-                        new Color(colorOffset, colorOffset, colorOffset).add(RGBImage[x][y]));
+    protected int[][] applyDither(RGBImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[][] paletteArr = new int[width][height];
+        int[] red = image.getRed();
+        int[] green = image.getGreen();
+        int[] blue = image.getBlue();
+        OffsetTable table = getOffsetTable((Integer) thresholdMapSelect.getSelectedItem(), (int) colorSpread.getValue());
+        int shift = Integer.numberOfTrailingZeros(table.size);
+        int mask = table.size - 1;
+        int[] offsets = table.offsets;
+        Parallel.forEachBand(height, BAND_HEIGHT, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                int mapRow = (y & mask) << shift;
+                for (int x = 0; x < width; x++) {
+                    int colorOffset = offsets[mapRow + (x & mask)];
+                    int i = x + y * width;
+                    int paletteIndex = palette.getClosestPaletteIndex(
+                            red[i] + colorOffset, green[i] + colorOffset, blue[i] + colorOffset);
 
-                paletteArr[x][y] = paletteIndex;
+                    paletteArr[x][y] = paletteIndex;
+                }
             }
-        }
+        });
         return paletteArr;
     }
 
+    private static class OffsetTable {
+        final int size;
+        final int colorSpread;
+        final int[] offsets; // indexed by row, so a row of pixels reads it in order
+
+        OffsetTable(int size, int colorSpread) {
+            this.size = size;
+            this.colorSpread = colorSpread;
+            int[] matrix = BayerMatrix.get(size);
+            offsets = new int[size * size];
+            for (int x = 0; x < size; x++) {
+                for (int y = 0; y < size; y++) {
+                    double threshold = (double) matrix[x * size + y] / (size * size);
+                    offsets[y * size + x] = (int) (colorSpread * (threshold - 1 / 2.0));
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getPatternPeriod() {
+        return (Integer) thresholdMapSelect.getSelectedItem();
+    }
+
     @Override
     public String toString() {
         return "Ordered";
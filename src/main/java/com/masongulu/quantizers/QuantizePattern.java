@@ -0,0 +1,136 @@
+package com.masongulu.quantizers;
+
+import com.masongulu.colors.Color;
+import com.masongulu.colors.Palette;
+import com.masongulu.colors.RGBImage;
+import com.masongulu.utils.Parallel;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Knoll/Yliluoma style pattern dithering. Each color is approximated by a mix of palette entries, sorted by
+ * luminance, and a Bayer threshold picks which entry of the mix a pixel gets.
+ */
+public class QuantizePattern extends QuantizeNone {
+    private static final int MAP_SIZE = 8;
+    private static final int[] bayer = BayerMatrix.get(MAP_SIZE);
+    private static final int KEY_BITS = 6; // colors are grouped by their top 6 bits per channel
+    private final JComboBox<Integer> candidateSelect = new JComboBox<>(new Integer[]{4, 8, 16, 32, 64});
+    private final JSpinner errorMultiplier = new JSpinner(new SpinnerNumberModel(1.0, 0.1, 1.0, 0.1));
+    // One slot per key, filled in as colors turn up. Bands racing to fill a slot make the same mix, so no locking.
+    private AtomicReferenceArray<byte[]> mixCache;
+    private Palette cachedPalette;
+    private int cachedCandidates;
+    private double cachedMultiplier;
+    private int[] luma;
+
+    public QuantizePattern() {
+        panel = new JPanel(new GridBagLayout());
+        GridBagConstraints c = new GridBagConstraints();
+        c.fill = GridBagConstraints.HORIZONTAL;
+        c.gridx = 0;
+        c.gridy = 0;
+        panel.add(new JLabel("Candidates"), c);
+        c.gridx = 1;
+        candidateSelect.setSelectedItem(16);
+        panel.add(candidateSelect, c);
+        c.gridx = 0;
+        c.gridy = 1;
+        panel.add(new JLabel("Error multiplier"), c);
+        c.gridx = 1;
+        panel.add(errorMultiplier, c);
+    }
+
+    @Override
+    protected int[][] applyDither(RGBImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[][] paletteArr = new int[width][height];
+        int[] red = image.getRed();
+        int[] green = image.getGreen();
+        int[] blue = image.getBlue();
+        int candidates = (Integer) candidateSelect.getSelectedItem();
+        double multiplier = (double) errorMultiplier.getValue();
+        // Mixes only hold for the palette and settings they were made with
+        if (mixCache == null || palette != cachedPalette || candidates != cachedCandidates
+                || multiplier != cachedMultiplier) {
+            mixCache = new AtomicReferenceArray<>(1 << (3 * KEY_BITS));
+            cachedPalette = palette;
+            cachedCandidates = candidates;
+            cachedMultiplier = multiplier;
+            luma = new int[palette.getLength()];
+            for (int i = 0; i < luma.length; i++) {
+                Color color = palette.getColor(i);
+                luma[i] = color.getRed() * 299 + color.getGreen() * 587 + color.getBlue() * 114;
+            }
+        }
+        AtomicReferenceArray<byte[]> mixes = mixCache;
+        int shift = 8 - KEY_BITS;
+        Parallel.forEachBand(height, BAND_HEIGHT, (startRow, endRow) -> {
+            for (int y = startRow; y < endRow; y++) {
+                for (int x = 0; x < width; x++) {
+                    int i = x + y * width;
+                    int key = (red[i] >> shift) << (2 * KEY_BITS) | (green[i] >> shift) << KEY_BITS | (blue[i] >> shift);
+                    byte[] mix = mixes.get(key);
+                    if (mix == null) {
+                        mix = createMix(key, candidates, multiplier);
+                        mixes.set(key, mix);
+                    }
+                    int threshold = bayer[(y & (MAP_SIZE - 1)) * MAP_SIZE + (x & (MAP_SIZE - 1))];
+                    paletteArr[x][y] = mix[threshold * candidates / (MAP_SIZE * MAP_SIZE)];
+                }
+            }
+        });
+        return paletteArr;
+    }
+
+    /**
+     * Picks palette entries one at a time, each one aiming to cancel out the error the previous ones
+     * left behind, so the mix averages out to the color.
+     */
+    private byte[] createMix(int key, int candidates, double multiplier) {
+        int shift = 8 - KEY_BITS;
+        int half = 1 << (shift - 1);
+        int mask = (1 << KEY_BITS) - 1;
+        // Center of the group of colors this key stands for
+        int r = ((key >> (2 * KEY_BITS)) << shift) + half;
+        int g = (((key >> KEY_BITS) & mask) << shift) + half;
+        int b = ((key & mask) << shift) + half;
+        byte[] mix = new byte[candidates];
+        int errorR = 0;
+        int errorG = 0;
+        int errorB = 0;
+        for (int i = 0; i < candidates; i++) {
+            int index = palette.getClosestPaletteIndex(
+                    r + (int) (errorR * multiplier), g + (int) (errorG * multiplier), b + (int) (errorB * multiplier));
+            Color chosen = palette.getColor(index);
+            errorR += r - chosen.getRed();
+            errorG += g - chosen.getGreen();
+            errorB += b - chosen.getBlue();
+            mix[i] = (byte) index;
+        }
+        // Darkest entries go to the lowest thresholds. Insertion sort is stable and the mix is tiny.
+        for (int i = 1; i < candidates; i++) {
+            byte index = mix[i];
+            int j = i - 1;
+            while (j >= 0 && luma[mix[j]] > luma[index]) {
+                mix[j + 1] = mix[j];
+                j--;
+            }
+            mix[j + 1] = index;
+        }
+        return mix;
+    }
+
+    @Override
+    public int getPatternPeriod() {
+        return MAP_SIZE;
+    }
+
+    @Override
+    public String toString() {
+        return "Pattern";
+    }
+}
@@ -0,0 +1,175 @@
+package com.masongulu.quantizers;
+
+import com.masongulu.colors.Color;
+import com.masongulu.colors.RGBImage;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Riemersma dithering. Pixels are visited along a Hilbert curve and each one is corrected by a weighted
+ * sum of the errors of the last few pixels, so there's no directional pattern like raster error diffusion
+ * leaves. The curve is walked one tile at a time so the pixels being worked on stay close together in memory,
+ * and the only error state is a short queue.
+ */
+public class QuantizeRiemersma extends QuantizeNone {
+    private static final int TILE_SIZE = 64;
+    private static final int[] curve = hilbertCurve(TILE_SIZE);
+    private static final int FRACTION_BITS = 12;
+    private static final int HALF = 1 << (FRACTION_BITS - 1);
+    private static final double RATIO = 1 / 16.0; // weight of the oldest error relative to the newest
+    private final JSpinner queueLength = new JSpinner(new SpinnerNumberModel(16, 2, 64, 1));
+
+    public QuantizeRiemersma() {
+        panel = new JPanel(new GridBagLayout());
+        GridBagConstraints c = new GridBagConstraints();
+        c.fill = GridBagConstraints.HORIZONTAL;
+        c.gridx = 0;
+        c.gridy = 0;
+        panel.add(new JLabel("Queue length"), c);
+        c.gridx = 1;
+        panel.add(queueLength, c);
+    }
+
+    /**
+     * @return Points of a Hilbert curve filling a size x size square, packed as x | y << 16. The curve starts at
+     * (0, 0) and ends at (size - 1, 0), so turning or mirroring it can make it run between any two neighbouring
+     * corners.
+     */
+    private static int[] hilbertCurve(int size) {
+        int[] points = new int[size * size];
+        for (int d = 0; d < points.length; d++) {
+            int x = 0;
+            int y = 0;
+            int t = d;
+            for (int s = 1; s < size; s *= 2) {
+                int rx = 1 & (t / 2);
+                int ry = 1 & (t ^ rx);
+                if (ry == 0) {
+                    if (rx == 1) {
+                        x = s - 1 - x;
+                        y = s - 1 - y;
+                    }
+                    int swap = x;
+                    x = y;
+                    y = swap;
+                }
+                x += s * rx;
+                y += s * ry;
+                t /= 4;
+            }
+            points[d] = x | y << 16;
+        }
+        return points;
+    }
+
+    @Override
+    protected int[][] applyDither(RGBImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[][] paletteArr = new int[width][height];
+        int[] red = image.getRed();
+        int[] green = image.getGreen();
+        int[] blue = image.getBlue();
+        int length = (int) queueLength.getValue();
+        // Weights grow exponentially from the oldest error to the newest, and add up to 1
+        int[] weights = new int[length];
+        double[] raw = new double[length];
+        double total = 0;
+        for (int age = 0; age < length; age++) {
+            raw[age] = Math.pow(RATIO, (double) age / (length - 1));
+            total += raw[age];
+        }
+        for (int age = 0; age < length; age++) {
+            weights[age] = (int) Math.round(raw[age] / total * (1 << FRACTION_BITS));
+        }
+        // Ring buffer of r, g, b errors, head is where the newest error goes
+        int[] queue = new int[length * 3];
+        int head = 0;
+        int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        // Tile rows alternate direction. Each tile's curve is turned or mirrored to enter at the corner next to
+        // where the last one left off, and to leave next to the following tile, so the walk has no jumps.
+        int entryX = 0;
+        int entryY = 0;
+        int last = TILE_SIZE - 1;
+        for (int tileY = 0; tileY < tilesY; tileY++) {
+            boolean reverse = (tileY & 1) == 1;
+            int far = reverse ? 0 : 1;
+            for (int tileStep = 0; tileStep < tilesX; tileStep++) {
+                int tileX = reverse ? tilesX - 1 - tileStep : tileStep;
+                // Corners are 0 or 1 on each axis, the exit always shares an edge with the entry
+                int exitX;
+                int exitY;
+                if (tileStep < tilesX - 1) {
+                    exitX = far;
+                    exitY = entryX == far ? 1 - entryY : entryY;
+                } else {
+                    exitX = entryY == 0 ? entryX : 1 - entryX;
+                    exitY = 1;
+                }
+                // The base curve runs along u from the entry to the exit, and goes into the tile along v
+                int ux = exitX - entryX;
+                int uy = exitY - entryY;
+                int vx = ux == 0 ? (entryX == 0 ? 1 : -1) : 0;
+                int vy = ux == 0 ? 0 : (entryY == 0 ? 1 : -1);
+                int originX = tileX * TILE_SIZE + entryX * last;
+                int originY = tileY * TILE_SIZE + entryY * last;
+                for (int point : curve) {
+                    int curveX = point & 0xFFFF;
+                    int curveY = point >> 16;
+                    int x = originX + curveX * ux + curveY * vx;
+                    int y = originY + curveX * uy + curveY * vy;
+                    // Tiles hanging off the right or bottom edge leave the image and come back, the queue
+                    // carries the error across that gap
+                    if (x >= width || y >= height)
+                        continue;
+                    int errorR = 0;
+                    int errorG = 0;
+                    int errorB = 0;
+                    for (int age = 0; age < length; age++) {
+                        int e = Math.floorMod(head - 1 - age, length) * 3;
+                        errorR += queue[e] * weights[age];
+                        errorG += queue[e + 1] * weights[age];
+                        errorB += queue[e + 2] * weights[age];
+                    }
+                    int i = x + y * width;
+                    int r = clamp(red[i] + ((errorR + HALF) >> FRACTION_BITS));
+                    int g = clamp(green[i] + ((errorG + HALF) >> FRACTION_BITS));
+                    int b = clamp(blue[i] + ((errorB + HALF) >> FRACTION_BITS));
+                    int newColor = palette.getClosestPaletteIndex(r, g, b);
+                    paletteArr[x][y] = newColor;
+                    // The queue holds how far each chosen color was from the original pixel
+                    Color paletteColor = palette.getColor(newColor);
+                    queue[head * 3] = red[i] - paletteColor.getRed();
+                    queue[head * 3 + 1] = green[i] - paletteColor.getGreen();
+                    queue[head * 3 + 2] = blue[i] - paletteColor.getBlue();
+                    head = (head + 1) % length;
+                }
+                // The next tile along, or the one below at the end of a row
+                if (tileStep < tilesX - 1) {
+                    entryX = 1 - exitX;
+                    entryY = exitY;
+                } else {
+                    entryX = exitX;
+                    entryY = 0;
+                }
+            }
+        }
+        return paletteArr;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    @Override
+    public int getPatternPeriod() {
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "Riemersma";
+    }
+}
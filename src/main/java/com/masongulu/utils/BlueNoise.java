@@ -0,0 +1,148 @@
+package com.masongulu.utils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates tileable blue noise threshold masks with Ulichney's void-and-cluster method.
+ * Masks are cached in memory and in the user's home directory, since generating a large one takes a while.
+ */
+public class BlueNoise {
+    private static final double SIGMA = 1.5;
+    private static final int MAX_RADIUS = 6; // the gaussian is practically 0 past 4 sigma
+    private static final Path CACHE_DIR = Path.of(System.getProperty("user.home"), ".bimg-generator");
+    private static final Map<Integer, int[]> masks = new ConcurrentHashMap<>();
+
+    /**
+     * @param size Width and height of the mask, at least 4
+     * @return The rank of each pixel (0 to size*size-1) indexed by x + y * size. Thresholding the mask at
+     * any rank gives an evenly spread pattern, and the mask tiles without seams.
+     */
+    public static int[] getMask(int size) {
+        if (size < 4)
+            throw new IllegalArgumentException("Blue noise masks need to be at least 4x4");
+        return masks.computeIfAbsent(size, BlueNoise::loadMask);
+    }
+
+    private static int[] loadMask(int size) {
+        Path path = CACHE_DIR.resolve("bluenoise-" + size + ".bin");
+        if (Files.isRegularFile(path)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                int[] mask = new int[size * size];
+                for (int i = 0; i < mask.length; i++) {
+                    mask[i] = in.readInt();
+                }
+                return mask;
+            } catch (IOException e) {
+                System.out.println("Failed to read cached blue noise mask, generating a new one.");
+            }
+        }
+        int[] mask = generate(size);
+        try {
+            Files.createDirectories(CACHE_DIR);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+                for (int rank : mask) {
+                    out.writeInt(rank);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to cache blue noise mask: " + e.getMessage());
+        }
+        return mask;
+    }
+
+    /**
+     * Runs void-and-cluster from scratch, always producing the same mask for a given size.
+     */
+    public static int[] generate(int size) {
+        int n = size * size;
+        int radius = Math.min(MAX_RADIUS, (size - 1) / 2);
+        double[] kernel = new double[(2 * radius + 1) * (2 * radius + 1)];
+        for (int dy = -radius; dy <= radius; dy++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                kernel[(dx + radius) + (dy + radius) * (2 * radius + 1)] =
+                        Math.exp(-(dx * dx + dy * dy) / (2 * SIGMA * SIGMA));
+            }
+        }
+        // Initial binary pattern, a tenth of the pixels set at random then spread out evenly
+        boolean[] pattern = new boolean[n];
+        double[] energy = new double[n];
+        Random random = new Random(size);
+        int ones = Math.max(1, n / 10);
+        for (int placed = 0; placed < ones; ) {
+            int i = random.nextInt(n);
+            if (!pattern[i]) {
+                pattern[i] = true;
+                splat(energy, kernel, size, radius, i, 1);
+                placed++;
+            }
+        }
+        // Swapping converges quickly in practice, the cap only guards against cycling between equal energies
+        for (int swap = 0; swap < n; swap++) {
+            int cluster = tightestCluster(pattern, energy);
+            pattern[cluster] = false;
+            splat(energy, kernel, size, radius, cluster, -1);
+            int emptiest = largestVoid(pattern, energy);
+            if (emptiest == cluster) {
+                pattern[cluster] = true;
+                splat(energy, kernel, size, radius, cluster, 1);
+                break;
+            }
+            pattern[emptiest] = true;
+            splat(energy, kernel, size, radius, emptiest, 1);
+        }
+        int[] rank = new int[n];
+        // Rank the initial pattern by removing its tightest clusters first
+        boolean[] phase1 = pattern.clone();
+        double[] phase1Energy = energy.clone();
+        for (int remaining = ones; remaining > 0; remaining--) {
+            int cluster = tightestCluster(phase1, phase1Energy);
+            phase1[cluster] = false;
+            splat(phase1Energy, kernel, size, radius, cluster, -1);
+            rank[cluster] = remaining - 1;
+        }
+        // Then fill in the rest by the largest voids. Past half full this is the same as picking the
+        // tightest cluster of unset pixels, as the kernel sums to the same value everywhere.
+        for (int filled = ones; filled < n; filled++) {
+            int emptiest = largestVoid(pattern, energy);
+            pattern[emptiest] = true;
+            splat(energy, kernel, size, radius, emptiest, 1);
+            rank[emptiest] = filled;
+        }
+        return rank;
+    }
+
+    private static void splat(double[] energy, double[] kernel, int size, int radius, int index, int sign) {
+        int x = index % size;
+        int y = index / size;
+        int kernelWidth = 2 * radius + 1;
+        for (int dy = -radius; dy <= radius; dy++) {
+            int row = Math.floorMod(y + dy, size) * size;
+            for (int dx = -radius; dx <= radius; dx++) {
+                energy[row + Math.floorMod(x + dx, size)] += sign * kernel[(dx + radius) + (dy + radius) * kernelWidth];
+            }
+        }
+    }
+
+    private static int tightestCluster(boolean[] pattern, double[] energy) {
+        int best = -1;
+        for (int i = 0; i < pattern.length; i++) {
+            if (pattern[i] && (best < 0 || energy[i] > energy[best]))
+                best = i;
+        }
+        return best;
+    }
+
+    private static int largestVoid(boolean[] pattern, double[] energy) {
+        int best = -1;
+        for (int i = 0; i < pattern.length; i++) {
+            if (!pattern[i] && (best < 0 || energy[i] < energy[best]))
+                best = i;
+        }
+        return best;
+    }
+}
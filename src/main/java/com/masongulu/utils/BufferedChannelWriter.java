@@ -0,0 +1,70 @@
+package com.masongulu.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes bytes to a file through a pooled buffer, so saving doesn't need the whole file in memory
+ * and doesn't make a system call per byte.
+ */
+public class BufferedChannelWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Buffers of closed writers, each open writer holds its own until it's closed
+    private static final Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private boolean closed;
+
+    public BufferedChannelWriter(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer pooled = bufferPool.poll();
+        buffer = pooled != null ? pooled : ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.clear();
+    }
+
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining())
+            flush();
+        buffer.put((byte) b);
+    }
+
+    /**
+     * Writes the low byte of each character, the same as writing Utils.stringToInt(str) to a file.
+     */
+    public void write(String str) throws IOException {
+        for (int i = 0; i < str.length(); i++) {
+            write(str.charAt(i));
+        }
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                bufferPool.offer(buffer);
+            }
+        }
+    }
+}
@@ -1,118 +1,344 @@
 package com.masongulu.utils;
 
 import com.masongulu.colors.Color;
+import com.masongulu.colors.ColorHistogram;
 
-import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntConsumer;
 
 public class KMeans {
-    public static Color[] applyKMeans(BufferedImage image, int K) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int[] pixelArray = new int[width * height];
-        Record[] recordPoints = new Record[width * height];
-        Centroid[] centroidPoints = new Centroid[K];
-        image.getRGB(0, 0, width, height, pixelArray, 0, width);
-        for (int i = 0; i < width * height; i++) {
-            recordPoints[i] = new Record(new Color(pixelArray[i]), centroidPoints);
-        }
-        // Here we have to choose our centroids
-        centroidPoints[0] = new Centroid(recordPoints[(int) (Math.random() * centroidPoints.length)].location);
-        // First point is one of the data points chosen at random
-        for (int i = 1; i < K; i++) {
-            // Compute the total weight of all items together.
-            // This can be skipped of course if sum is already 1.
-            double totalWeight = 0.0;
-            for (Record record : recordPoints) {
-                totalWeight += record.getWeight(i);
-            }
+    // Points are split into fixed size chunks, so partial sums are always combined in the same order
+    private static final int CHUNK_SIZE = 4096;
+    private final int K;
+    private Random random = new Random();
+    private boolean parallel = true;
+    private boolean accelerated = true;
+    private double tolerance = 0;
+    private int maxIterations = 1000;
+    private Color[] initialCentroids = null;
 
-            // Now choose a random item.
-            int idx = 0;
-            for (double r = Math.random() * totalWeight; idx < recordPoints.length - 1; ++idx) {
-                r -= recordPoints[idx].getWeight(i);
-                if (r <= 0.0) break;
-            }
-            centroidPoints[i] = new Centroid(recordPoints[idx].location);
-            // https://stackoverflow.com/questions/6737283/weighted-randomness-in-java
+    private int points;
+    private int chunks;
+    private int[] red;
+    private int[] green;
+    private int[] blue;
+    private long[] count;
+    private int[] closestCentroid;
+    private double[] centroidR;
+    private double[] centroidG;
+    private double[] centroidB;
+    // Hamerly bounds, distance to the assigned centroid and a lower bound on the distance to any other
+    private double[] upperBound;
+    private double[] lowerBound;
+    private double[] halfSeparation;
+
+    public KMeans(int K) {
+        this.K = K;
+    }
+
+    /**
+     * Fixes the seed used to choose starting centroids, so repeated runs give the same palette.
+     */
+    public void setSeed(long seed) {
+        random = new Random(seed);
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Uses Hamerly's bounds to skip distance calculations for points that can't have changed centroid.
+     * This gives the same clusters as the plain version.
+     */
+    public void setAccelerated(boolean accelerated) {
+        this.accelerated = accelerated;
+    }
+
+    /**
+     * @param tolerance Stop once no centroid moves further than this in RGB space, 0 waits for them to stop
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Starts from the given colors instead of K-Means++ seeding, for refining a palette from another source.
+     */
+    public void setInitialCentroids(Color[] initialCentroids) {
+        if (initialCentroids != null && initialCentroids.length != K)
+            throw new IllegalArgumentException("Expected " + K + " initial centroids, got " + initialCentroids.length);
+        this.initialCentroids = initialCentroids;
+    }
+
+    /**
+     * Clusters the entries of a histogram, weighting each by how many pixels it holds.
+     * This finds the same clusters as working on every pixel, but costs scale with the number
+     * of distinct colors instead of the resolution.
+     */
+    public Color[] apply(ColorHistogram histogram) {
+        points = histogram.size();
+        chunks = (points + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        // Points and centroids are kept as plain channel arrays so no objects are made per point
+        red = new int[points];
+        green = new int[points];
+        blue = new int[points];
+        count = new long[points];
+        closestCentroid = new int[points];
+        for (int i = 0; i < points; i++) {
+            int rgb = histogram.getColor(i);
+            red[i] = Color.red(rgb);
+            green[i] = Color.green(rgb);
+            blue[i] = Color.blue(rgb);
+            count[i] = histogram.getCount(i);
         }
-        // end choosing centroids
-        int iterations = 0;
-        boolean centroidsStayedPut = false;
-        while (!centroidsStayedPut) {
-            centroidsStayedPut = true;
-            Color[] averageCentroidLocation = new Color[K];
-            int[] centroidCount = new int[K];
+        centroidR = new double[K];
+        centroidG = new double[K];
+        centroidB = new double[K];
+        if (initialCentroids != null) {
             for (int i = 0; i < K; i++) {
-                averageCentroidLocation[i] = new Color(0, 0, 0);
-                centroidCount[i] = 0;
-            }
-            for (Record recordPoint : recordPoints) {
-                int centroidIndex = recordPoint.determineCentroid();
-                averageCentroidLocation[centroidIndex] =
-                        averageCentroidLocation[centroidIndex].add(recordPoint.location);
-                centroidCount[centroidIndex]++;
+                centroidR[i] = initialCentroids[i].getRed();
+                centroidG[i] = initialCentroids[i].getGreen();
+                centroidB[i] = initialCentroids[i].getBlue();
             }
+        } else {
+            chooseCentroids(histogram.getTotal());
+        }
+        if (accelerated) {
+            upperBound = new double[points];
+            lowerBound = new double[points];
+            halfSeparation = new double[K];
+            Arrays.fill(upperBound, Double.POSITIVE_INFINITY); // forces a full search the first time round
+        }
+        int iterations = 0;
+        // Each chunk sums the points closest to each centroid as {count, r, g, b}
+        long[][] chunkSums = new long[chunks][4 * K];
+        double[] moved = new double[K];
+        while (iterations < maxIterations) {
+            if (accelerated)
+                updateHalfSeparation();
+            forEachChunk(chunk -> {
+                long[] sums = chunkSums[chunk];
+                Arrays.fill(sums, 0);
+                int end = Math.min(points, (chunk + 1) * CHUNK_SIZE);
+                for (int point = chunk * CHUNK_SIZE; point < end; point++) {
+                    int centroidIndex;
+                    if (accelerated) {
+                        centroidIndex = determineCentroidBounded(point);
+                    } else {
+                        centroidIndex = determineCentroid(point, 0, K);
+                        closestCentroid[point] = centroidIndex;
+                    }
+                    sums[4 * centroidIndex] += count[point];
+                    sums[4 * centroidIndex + 1] += red[point] * count[point];
+                    sums[4 * centroidIndex + 2] += green[point] * count[point];
+                    sums[4 * centroidIndex + 3] += blue[point] * count[point];
+                }
+            });
+            double maxMoved = 0;
             for (int i = 0; i < K; i++) {
-                averageCentroidLocation[i] = averageCentroidLocation[i].multiply(1.0f / centroidCount[i]);
-                centroidsStayedPut = centroidsStayedPut && centroidPoints[i].setLocation(averageCentroidLocation[i]);
+                long centroidCount = 0;
+                long sumR = 0;
+                long sumG = 0;
+                long sumB = 0;
+                for (long[] sums : chunkSums) {
+                    centroidCount += sums[4 * i];
+                    sumR += sums[4 * i + 1];
+                    sumG += sums[4 * i + 2];
+                    sumB += sums[4 * i + 3];
+                }
+                moved[i] = 0;
+                if (centroidCount == 0)
+                    continue; // nothing is closest to this centroid, leave it where it is
+                double r = (double) sumR / centroidCount;
+                double g = (double) sumG / centroidCount;
+                double b = (double) sumB / centroidCount;
+                double dr = r - centroidR[i];
+                double dg = g - centroidG[i];
+                double db = b - centroidB[i];
+                moved[i] = Math.sqrt(dr * dr + dg * dg + db * db);
+                maxMoved = Math.max(maxMoved, moved[i]);
+                centroidR[i] = r;
+                centroidG[i] = g;
+                centroidB[i] = b;
             }
             iterations++;
-            if (iterations > 1000) break;
+            if (maxMoved <= tolerance)
+                break;
+            if (accelerated)
+                updateBounds(moved);
         }
         Color[] returnValue = new Color[K];
         for (int i = 0; i < K; i++) {
-            returnValue[i] = new Color(centroidPoints[i].location);
+            returnValue[i] = new Color((int) Math.round(centroidR[i]), (int) Math.round(centroidG[i]),
+                    (int) Math.round(centroidB[i]));
         }
-        System.out.println("Found optimal colors in " + iterations + " iterations.");
+        System.out.println("Found optimal colors in " + iterations + " iterations over " + points + " colors.");
         return returnValue;
     }
-}
 
-class Centroid {
-    public Color location;
+    /**
+     * K-Means++ seeding, each new centroid is a point picked with probability
+     * proportional to its count times its squared distance to the closest centroid so far.
+     */
+    private void chooseCentroids(long total) {
+        // First point is one of the data points chosen at random, weighted by how common it is
+        int first = 0;
+        for (double r = random.nextDouble() * total; first < points - 1; ++first) {
+            r -= count[first];
+            if (r <= 0.0) break;
+        }
+        setCentroid(0, first);
+        double[] weights = new double[points];
+        double[] chunkWeights = new double[chunks];
+        for (int i = 1; i < K; i++) {
+            int newest = i - 1;
+            forEachChunk(chunk -> {
+                double chunkWeight = 0.0;
+                int end = Math.min(points, (chunk + 1) * CHUNK_SIZE);
+                for (int point = chunk * CHUNK_SIZE; point < end; point++) {
+                    // Only the centroid added last round can be closer than the one already found
+                    int centroid = determineCentroid(point, newest, newest + 1);
+                    closestCentroid[point] = centroid;
+                    weights[point] = count[point] * distanceSquared(point, centroid);
+                    chunkWeight += weights[point];
+                }
+                chunkWeights[chunk] = chunkWeight;
+            });
+            double totalWeight = 0.0;
+            for (double chunkWeight : chunkWeights) {
+                totalWeight += chunkWeight;
+            }
 
-    Centroid(Color location) {
-        this.location = location;
+            // Now choose a random item, skipping whole chunks first
+            double r = random.nextDouble() * totalWeight;
+            int chunk = 0;
+            while (chunk < chunks - 1 && r > chunkWeights[chunk]) {
+                r -= chunkWeights[chunk];
+                chunk++;
+            }
+            int idx = chunk * CHUNK_SIZE;
+            int last = Math.min(points, idx + CHUNK_SIZE) - 1;
+            for (; idx < last; ++idx) {
+                r -= weights[idx];
+                if (r <= 0.0) break;
+            }
+            setCentroid(i, idx);
+            // https://stackoverflow.com/questions/6737283/weighted-randomness-in-java
+        }
     }
 
-    public boolean setLocation(Color location) {
-        if (!this.location.equals(location)) {
-            this.location = location;
-            return false;
-        }
-        return true;
+    private void setCentroid(int centroid, int point) {
+        centroidR[centroid] = red[point];
+        centroidG[centroid] = green[point];
+        centroidB[centroid] = blue[point];
     }
-}
 
-class Record {
-    private final Centroid[] centroids;
-    public Color location; // location in RGB space
-    private int closestCentroid = 0;
+    private double distanceSquared(int point, int centroid) {
+        double dr = red[point] - centroidR[centroid];
+        double dg = green[point] - centroidG[centroid];
+        double db = blue[point] - centroidB[centroid];
+        return dr * dr + dg * dg + db * db;
+    }
 
-    Record(Color color, Centroid[] centroids) {
-        this.centroids = centroids;
-        location = color;
+    /**
+     * Finds the closest centroid in [from, to) to a point, keeping its current centroid on ties.
+     */
+    private int determineCentroid(int point, int from, int to) {
+        int closest = closestCentroid[point];
+        double diff = distanceSquared(point, closest);
+        for (int index = from; index < to; index++) {
+            double lDiff = distanceSquared(point, index);
+            if (lDiff < diff) {
+                diff = lDiff;
+                closest = index;
+            }
+        }
+        return closest;
     }
 
-    public int determineCentroid(int maxCentroid) {
-        double diff = centroids[closestCentroid].location.diff(location);
-        for (int index = 0; index < maxCentroid; index++) {
-            double lDiff = centroids[index].location.diff(this.location);
+    /**
+     * Hamerly's assignment step, a point only needs every distance checked when the distance to its
+     * centroid is larger than both its lower bound and half the gap to the nearest other centroid.
+     */
+    private int determineCentroidBounded(int point) {
+        int closest = closestCentroid[point];
+        double bound = Math.max(halfSeparation[closest], lowerBound[point]);
+        if (upperBound[point] <= bound)
+            return closest;
+        upperBound[point] = Math.sqrt(distanceSquared(point, closest));
+        if (upperBound[point] <= bound)
+            return closest;
+        double diff = distanceSquared(point, closest);
+        double second = Double.POSITIVE_INFINITY;
+        for (int index = 0; index < K; index++) {
+            if (index == closestCentroid[point]) continue;
+            double lDiff = distanceSquared(point, index);
             if (lDiff < diff) {
+                second = diff;
                 diff = lDiff;
-                closestCentroid = index;
+                closest = index;
+            } else if (lDiff < second) {
+                second = lDiff;
             }
         }
-        return closestCentroid;
+        closestCentroid[point] = closest;
+        upperBound[point] = Math.sqrt(diff);
+        lowerBound[point] = Math.sqrt(second);
+        return closest;
     }
 
-    public int determineCentroid() {
-        return determineCentroid(centroids.length);
+    private void updateHalfSeparation() {
+        for (int i = 0; i < K; i++) {
+            double closest = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < K; j++) {
+                if (i == j) continue;
+                double dr = centroidR[i] - centroidR[j];
+                double dg = centroidG[i] - centroidG[j];
+                double db = centroidB[i] - centroidB[j];
+                closest = Math.min(closest, dr * dr + dg * dg + db * db);
+            }
+            halfSeparation[i] = Math.sqrt(closest) / 2;
+        }
+    }
+
+    /**
+     * Loosens each point's bounds by how far the centroids moved, so they stay valid without recalculating.
+     */
+    private void updateBounds(double[] moved) {
+        int farthest = 0;
+        for (int i = 1; i < K; i++) {
+            if (moved[i] > moved[farthest]) farthest = i;
+        }
+        double secondFarthest = 0;
+        for (int i = 0; i < K; i++) {
+            if (i != farthest) secondFarthest = Math.max(secondFarthest, moved[i]);
+        }
+        double maxMoved = moved[farthest];
+        int farthestCentroid = farthest;
+        double secondMoved = secondFarthest;
+        forEachChunk(chunk -> {
+            int end = Math.min(points, (chunk + 1) * CHUNK_SIZE);
+            for (int point = chunk * CHUNK_SIZE; point < end; point++) {
+                int closest = closestCentroid[point];
+                upperBound[point] += moved[closest];
+                lowerBound[point] -= closest == farthestCentroid ? secondMoved : maxMoved;
+            }
+        });
     }
 
-    public double getWeight(int maxCentroid) {
-        determineCentroid(maxCentroid);
-        return Math.pow(location.diff(centroids[closestCentroid].location), 2) /
-                Math.pow(0xFFFFFF, 2); // Normalize so max distance = 1.0
+    private void forEachChunk(IntConsumer task) {
+        if (parallel) {
+            Parallel.forEachChunk(chunks, task);
+        } else {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                task.accept(chunk);
+            }
+        }
     }
-}
\ No newline at end of file
+}
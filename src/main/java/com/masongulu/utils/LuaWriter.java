@@ -0,0 +1,160 @@
+package com.masongulu.utils;
+
+import java.io.IOException;
+
+/**
+ * Writes a Lua table constructor straight to a file as it's produced, instead of building the whole
+ * table in memory first. Every value is followed by a comma, and values written without a key fill
+ * the array part in the order they're written.
+ */
+public class LuaWriter {
+    private final BufferedChannelWriter out;
+    private int depth = 0;
+    private boolean asciiOnly = false;
+    private boolean runs = false;
+
+    public LuaWriter(BufferedChannelWriter out) {
+        this.out = out;
+    }
+
+    /**
+     * @param asciiOnly Whether bytes past 0x7F are escaped as well, keeping the file plain ASCII text
+     */
+    public void setAsciiOnly(boolean asciiOnly) {
+        this.asciiOnly = asciiOnly;
+    }
+
+    /**
+     * @param runs Whether strings with long runs of one character may be written as ("c"):rep(n) pieces. These
+     *             are method calls, so only readers that run the output through load or textutils.unserialise
+     *             accept it, not ones that parse it as a plain table literal.
+     */
+    public void setRuns(boolean runs) {
+        this.runs = runs;
+    }
+
+    public void beginTable() throws IOException {
+        out.write('{');
+        depth++;
+    }
+
+    public void endTable() throws IOException {
+        out.write('}');
+        depth--;
+        if (depth > 0)
+            out.write(',');
+    }
+
+    /**
+     * Sets the key of the next value or table.
+     */
+    public void key(String key) throws IOException {
+        out.write("[\"");
+        out.write(key);
+        out.write("\"]=");
+    }
+
+    public void key(int key) throws IOException {
+        out.write('[');
+        out.write(Integer.toString(key));
+        out.write("]=");
+    }
+
+    /**
+     * Writes a string with the shortest escapes Lua accepts, or as runs joined with .. if that's shorter.
+     */
+    public void value(String value) throws IOException {
+        if (runs) {
+            String expression = runExpression(value);
+            if (expression != null) {
+                out.write(expression);
+                out.write(',');
+                return;
+            }
+        }
+        out.write('"');
+        out.write(escape(value, 0, value.length()));
+        out.write("\",");
+    }
+
+    public void value(int value) throws IOException {
+        out.write(Integer.toString(value));
+        out.write(',');
+    }
+
+    public void value(boolean value) throws IOException {
+        out.write(value ? "true," : "false,");
+    }
+
+    /**
+     * @return The characters between start and end escaped for a double quoted Lua string. Printable ASCII
+     * is written as is, and only the characters Lua can't take raw get escaped, with the shortest escape.
+     */
+    private String escape(String value, int start, int end) {
+        StringBuilder str = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            int c = value.charAt(i) & 0xFF;
+            if (c == '"' || c == '\\') {
+                str.append('\\').append((char) c);
+            } else if (c == '\n') {
+                str.append("\\n");
+            } else if (c == '\r') {
+                str.append("\\r");
+            } else if (c == '\t') {
+                str.append("\\t");
+            } else if ((c >= 0x20 && c < 0x7F) || (c >= 0x80 && !asciiOnly)) {
+                str.append((char) c);
+            } else {
+                str.append('\\');
+                String digits = Integer.toString(c);
+                // A digit straight after the escape would be read as part of it, so pad it out to 3 digits
+                if (i + 1 < end && Character.isDigit(value.charAt(i + 1))) {
+                    str.append("000", 0, 3 - digits.length());
+                }
+                str.append(digits);
+            }
+        }
+        return str.toString();
+    }
+
+    /**
+     * @return The string as quoted pieces and ("c"):rep(n) runs joined with .., or null if that isn't shorter
+     */
+    private String runExpression(String value) {
+        StringBuilder expression = new StringBuilder();
+        int literalStart = 0;
+        boolean hasRun = false;
+        for (int i = 0; i < value.length(); ) {
+            int end = i + 1;
+            while (end < value.length() && value.charAt(end) == value.charAt(i)) {
+                end++;
+            }
+            String character = escape(value, i, i + 1);
+            int run = end - i;
+            // ("c"):rep(n) plus the .. joining it and the quotes it splits a literal with
+            int runLength = character.length() + Integer.toString(run).length() + 14;
+            if (run * character.length() > runLength) {
+                appendPiece(expression, literalStart, i, value);
+                if (expression.length() > 0)
+                    expression.append("..");
+                expression.append("(\"").append(character).append("\"):rep(").append(run).append(')');
+                literalStart = end;
+                hasRun = true;
+            }
+            i = end;
+        }
+        if (!hasRun)
+            return null;
+        appendPiece(expression, literalStart, value.length(), value);
+        String literal = escape(value, 0, value.length());
+        return expression.length() < literal.length() + 2 ? expression.toString() : null;
+    }
+
+    private void appendPiece(StringBuilder expression, int start, int end, String value) {
+        if (start >= end)
+            return;
+        if (expression.length() > 0)
+            expression.append("..");
+        expression.append('"').append(escape(value, start, end)).append('"');
+    }
+}
@@ -0,0 +1,52 @@
+package com.masongulu.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Shared worker pool for the parts of the pipeline that split their work into independent chunks.
+ * Callers should make each chunk's result depend only on its index, so the output never depends
+ * on how many threads ran it.
+ */
+public class Parallel {
+    private static ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    public static int getThreads() {
+        return pool.getParallelism();
+    }
+
+    public static synchronized void setThreads(int threads) {
+        if (threads != pool.getParallelism()) {
+            pool.shutdown();
+            pool = new ForkJoinPool(Math.max(1, threads));
+        }
+    }
+
+    /**
+     * Runs task once for every chunk index in [0, chunks), returning once they have all finished.
+     */
+    public static void forEachChunk(int chunks, IntConsumer task) {
+        ForkJoinPool pool = Parallel.pool;
+        if (chunks <= 1 || pool.getParallelism() <= 1) {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                task.accept(chunk);
+            }
+            return;
+        }
+        pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(task)).join();
+    }
+
+    /**
+     * Splits rows [0, rows) into bands of bandSize rows and runs them as chunks on the pool. Only for work
+     * where each row depends on nothing but its own input, so the output is the same as running the rows in order.
+     */
+    public static void forEachBand(int rows, int bandSize, Band band) {
+        int bands = (rows + bandSize - 1) / bandSize;
+        forEachChunk(bands, chunk -> band.run(chunk * bandSize, Math.min(rows, (chunk + 1) * bandSize)));
+    }
+
+    public interface Band {
+        void run(int start, int end);
+    }
+}
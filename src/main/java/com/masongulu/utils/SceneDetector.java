@@ -0,0 +1,62 @@
+package com.masongulu.utils;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Finds scene cuts in an animation by comparing coarse color histograms of sampled pixels between frames.
+ */
+public class SceneDetector {
+    private static final int BITS = 3; // 8 levels per channel, 512 bins
+    private static final int SAMPLES = 64; // sample grid is at most 64x64 pixels
+
+    /**
+     * @param threshold Fraction of the sampled pixels that need to change color bins to count as a cut, 0-1
+     * @return For each frame, whether it starts a new scene. The first frame always does.
+     */
+    public static boolean[] findCuts(BufferedImage[] frames, double threshold) {
+        boolean[] cuts = new boolean[frames.length];
+        double[] last = null;
+        for (int i = 0; i < frames.length; i++) {
+            double[] signature = signature(frames[i]);
+            cuts[i] = last == null || distance(last, signature) > threshold;
+            last = signature;
+        }
+        return cuts;
+    }
+
+    /**
+     * @return A normalized histogram of colors sampled on an even grid over the image
+     */
+    public static double[] signature(BufferedImage image) {
+        double[] histogram = new double[1 << (3 * BITS)];
+        int stepX = (image.getWidth() + SAMPLES - 1) / SAMPLES;
+        int stepY = (image.getHeight() + SAMPLES - 1) / SAMPLES;
+        int shift = 8 - BITS;
+        int samples = 0;
+        for (int y = stepY / 2; y < image.getHeight(); y += stepY) {
+            for (int x = stepX / 2; x < image.getWidth(); x += stepX) {
+                int rgb = image.getRGB(x, y);
+                int bin = (((rgb >> 16) & 0xFF) >> shift) << (2 * BITS)
+                        | (((rgb >> 8) & 0xFF) >> shift) << BITS
+                        | ((rgb & 0xFF) >> shift);
+                histogram[bin]++;
+                samples++;
+            }
+        }
+        for (int bin = 0; bin < histogram.length; bin++) {
+            histogram[bin] /= samples;
+        }
+        return histogram;
+    }
+
+    /**
+     * @return Half the L1 distance between two signatures, 0 when identical and 1 when nothing overlaps
+     */
+    public static double distance(double[] a, double[] b) {
+        double total = 0;
+        for (int bin = 0; bin < a.length; bin++) {
+            total += Math.abs(a[bin] - b[bin]);
+        }
+        return total / 2;
+    }
+}